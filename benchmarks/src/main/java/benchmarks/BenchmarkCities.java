@@ -0,0 +1,39 @@
+package benchmarks;
+
+import java.util.Random;
+import models.CityGenerator;
+import models.CityGraph;
+import models.Node;
+import models.NodeType;
+import models.VehicleType;
+import simulation.SimulationEngine;
+
+// Shared fixtures for the benchmarks: generated grid cities of a given size and engines pre-filled with traffic.
+// Everything is seeded, so two runs (e.g. before and after an engine change) measure exactly the same workload.
+final class BenchmarkCities {
+    static final long SEED = 42L;
+
+    private BenchmarkCities() {}
+
+    // A Manhattan grid with the given number of intersections, or the built-in city for size 0.
+    static CityGraph city(int intersections) {
+        if (intersections == 0) return new CityGraph();
+        return new CityGenerator(SEED).generate(CityGenerator.Layout.GRID, intersections);
+    }
+
+    // An engine on the given city with 'count' cars between random apartments, spread along their routes.
+    // The engine thread is never started, so spawns and ticks run on the calling thread.
+    static SimulationEngine engineWithTraffic(CityGraph graph, int count) {
+        SimulationEngine engine = new SimulationEngine(graph);
+        Random R = new Random(SEED);
+        int[] apartments = graph.nodesOfType(NodeType.APARTMENT);
+        int attempts = 0;
+        while (engine.vehicles.size() < count && attempts++ < count * 4) {
+            Node s = graph.node(apartments[R.nextInt(apartments.length)]);
+            Node e = graph.node(apartments[R.nextInt(apartments.length)]);
+            if (s != e) engine.spawnVehicle(s, e, VehicleType.CAR);
+        }
+        for (int t = 0; t < SimulationEngine.TICKS_PER_SECOND; t++) engine.tick(); // Let queues and lights settle
+        return engine;
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import models.CityGraph;
+import models.Edge;
+import models.NodeType;
+import models.Vehicle;
+import models.VehicleStore;
+import models.VehicleType;
+import models.WorldState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Queue churn on a single road: the vehicle at the head leaves and re-enters at the back, as happens when traffic flows
+// through an intersection. 'depth' is the number of vehicles queued on the road; 'emergencyShare' mixes in
+// higher-priority vehicles so the priority ordering is exercised as well.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EdgeQueueBenchmark {
+    @Param({"1", "16", "256"})
+    public int depth;
+
+    @Param({"0", "10"})
+    public int emergencyPercent;
+
+    private WorldState world;
+    private Edge edge;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CityGraph graph = new CityGraph();
+        edge = graph.edge(0);
+        while (edge.target.type != NodeType.INTERSECTION) edge = graph.edge(edge.index + 1); // Count on a light like real roads do
+
+        world = new WorldState(graph);
+        VehicleStore store = world.vehicles;
+        int[] route = {edge.source.index, edge.target.index};
+        for (int i = 0; i < depth; i++) {
+            VehicleType type = (i * 100 / depth) < emergencyPercent ? VehicleType.AMBULANCE : VehicleType.CAR;
+            int slot = store.allocate("V" + i, type, route, edge.target.index);
+            world.enter(edge, store.view(slot));
+        }
+    }
+
+    @Benchmark
+    public Vehicle churn() {
+        Vehicle head = world.queueHead(edge.index);
+        world.leave(edge, head);
+        world.enter(edge, head);
+        return head;
+    }
+}
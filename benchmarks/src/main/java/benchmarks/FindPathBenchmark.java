@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import models.CityGraph;
+import models.Node;
+import models.NodeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import routing.RoutingAlgorithm;
+import simulation.SimulationEngine;
+
+// SimulationEngine.findPath between random apartment pairs on empty and congested maps, for each routing algorithm.
+// The route cache is disabled so every call runs a full search.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindPathBenchmark {
+    private static final int PAIRS = 1024;
+
+    @Param({"0", "1000", "10000", "100000"})
+    public int intersections;
+
+    @Param({"0", "1000"})
+    public int vehicles;
+
+    @Param({"DIJKSTRA", "ASTAR", "ALT", "CCH"})
+    public RoutingAlgorithm algorithm;
+
+    private SimulationEngine engine;
+    private Node[] origins;
+    private Node[] destinations;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CityGraph graph = BenchmarkCities.city(intersections);
+        engine = BenchmarkCities.engineWithTraffic(graph, vehicles);
+        engine.configureRouting(algorithm);
+        engine.configureRouteCache(0, 0);
+
+        Random R = new Random(BenchmarkCities.SEED);
+        int[] apartments = graph.nodesOfType(NodeType.APARTMENT);
+        origins = new Node[PAIRS];
+        destinations = new Node[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            origins[i] = graph.node(apartments[R.nextInt(apartments.length)]);
+            destinations[i] = graph.node(apartments[R.nextInt(apartments.length)]);
+        }
+    }
+
+    @Benchmark
+    public List<Node> findPath() {
+        int i = next++ & (PAIRS - 1);
+        return engine.findPath(origins[i], destinations[i]);
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import models.CityGraph;
+import models.Edge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CityGraph.getEdge lookups by node id for random existing roads, plus misses for node pairs that are not connected.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetEdgeBenchmark {
+    private static final int LOOKUPS = 4096;
+
+    @Param({"0", "1000", "100000", "1000000"})
+    public int intersections;
+
+    private CityGraph graph;
+    private int[] from;
+    private int[] to;
+    private int[] missFrom;
+    private int[] missTo;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = BenchmarkCities.city(intersections);
+        Random R = new Random(BenchmarkCities.SEED);
+        from = new int[LOOKUPS];
+        to = new int[LOOKUPS];
+        missFrom = new int[LOOKUPS];
+        missTo = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            Edge e = graph.edge(R.nextInt(graph.edgeCount()));
+            from[i] = e.source.id;
+            to[i] = e.target.id;
+            missFrom[i] = graph.node(R.nextInt(graph.nodeCount())).id;
+            missTo[i] = graph.node(R.nextInt(graph.nodeCount())).id;
+        }
+    }
+
+    @Benchmark
+    public Edge hit() {
+        int i = next++ & (LOOKUPS - 1);
+        return graph.getEdge(from[i], to[i]);
+    }
+
+    @Benchmark
+    public Edge miss() {
+        int i = next++ & (LOOKUPS - 1);
+        return graph.getEdge(missFrom[i], missTo[i]);
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import GUI.MapPanel;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import models.CityGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import simulation.SimulationEngine;
+
+// One repaint of the map (roads, buildings, lights and vehicles) into an offscreen image of the default window size.
+// Runs with java.awt.headless, so no display is needed.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MapPanelPaintBenchmark {
+    private static final int WIDTH = 1250;
+    private static final int HEIGHT = 900;
+
+    @Param({"0", "1000", "10000"})
+    public int intersections;
+
+    @Param({"0", "100", "1000"})
+    public int vehicles;
+
+    private MapPanel panel;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CityGraph graph = BenchmarkCities.city(intersections);
+        SimulationEngine engine = BenchmarkCities.engineWithTraffic(graph, vehicles);
+        panel = new MapPanel(graph, engine);
+        panel.setSize(WIDTH, HEIGHT);
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        Graphics2D frame = (Graphics2D) g.create(); // paintComponent transforms the graphics, so draw on a fresh copy
+        try {
+            panel.paint(frame);
+        } finally {
+            frame.dispose();
+        }
+        return image;
+    }
+}
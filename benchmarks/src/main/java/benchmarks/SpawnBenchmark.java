@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import models.CityGraph;
+import models.Node;
+import models.NodeType;
+import models.VehicleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import simulation.SimulationEngine;
+import simulation.TripRequest;
+
+// Morning-peak injection: 'trips' car trips leaving 'origins' apartments for random destinations, spawned one by one
+// (spawnVehicle) or as one batch (spawnVehicles, one search per origin). Each invocation starts from an empty engine.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnBenchmark {
+    @Param({"1000", "10000"})
+    public int intersections;
+
+    @Param({"1000", "10000"})
+    public int trips;
+
+    @Param({"10"})
+    public int origins;
+
+    private CityGraph graph;
+    private List<TripRequest> requests;
+    private SimulationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = BenchmarkCities.city(intersections);
+        Random R = new Random(BenchmarkCities.SEED);
+        int[] apartments = graph.nodesOfType(NodeType.APARTMENT);
+        requests = new ArrayList<>(trips);
+        for (int i = 0; i < trips; i++) {
+            Node origin = graph.node(apartments[R.nextInt(Math.min(origins, apartments.length))]);
+            Node destination = graph.node(apartments[R.nextInt(apartments.length)]);
+            requests.add(new TripRequest(origin, destination, VehicleType.CAR));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyEngine() {
+        engine = new SimulationEngine(graph);
+        engine.configureRouteCache(0, 0);
+    }
+
+    @Benchmark
+    public int oneByOne() {
+        int spawned = 0;
+        for (TripRequest trip : requests) {
+            if (engine.spawnVehicle(trip.origin, trip.destination, trip.type)) spawned++;
+        }
+        return spawned;
+    }
+
+    @Benchmark
+    public int batch() {
+        return engine.spawnVehicles(requests);
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import models.CityGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import simulation.SimulationEngine;
+
+// One full simulation tick: moving every vehicle (look-ahead, edge transitions, arrivals) plus the traffic light update,
+// or with eventDriven only the vehicles and lights that have an event in that tick.
+// Vehicles that arrive are not replaced, so the traffic is rebuilt before every iteration to keep the population
+// close to the requested size.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark {
+    @Param({"0", "10000", "100000"})
+    public int intersections;
+
+    @Param({"100", "1000", "10000"})
+    public int vehicles;
+
+    @Param({"1"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean eventDriven;
+
+    private CityGraph graph;
+    private SimulationEngine engine;
+
+    @Setup(Level.Trial)
+    public void loadCity() {
+        graph = BenchmarkCities.city(intersections);
+    }
+
+    @Setup(Level.Iteration)
+    public void spawnTraffic() {
+        if (engine != null) engine.setParallelism(1);
+        engine = BenchmarkCities.engineWithTraffic(graph, vehicles);
+        engine.setParallelism(threads);
+        engine.setEventDriven(eventDriven);
+    }
+
+    @Benchmark
+    public int tick() {
+        return engine.tick();
+    }
+}
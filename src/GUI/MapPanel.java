@@ -6,12 +6,19 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import javax.swing.JPanel;
 import models.*;
 import simulation.SimulationEngine;
+import simulation.WorldSnapshot;
 
 // Handles the graphical rendering of the simulation. It draws the map, roads, nodes, traffic lights, and vehicles. Supports zoom/scaling and role-based view filtering.
+// Roads, buildings and labels never change while the simulation runs, so they are rendered once into cached images (rebuilt
+// on resize or when invalidateStaticLayers is called); each frame only blits them and paints the lights and vehicles.
+// Dynamic state is read from the engine's latest WorldSnapshot, never from the live vehicle store, so painting neither
+// blocks the engine nor sees vehicles in the middle of an update.
 public class MapPanel extends JPanel {
 
     private final int BASE_LANE_OFFSET = 7; // Offset for drawing vehicles in lanes (to avoid overlap on bidirectional roads)
@@ -19,10 +26,43 @@ public class MapPanel extends JPanel {
     private SimulationEngine engine;
     private String currentRole = "";
 
+    // Shared paint objects, so a frame allocates nothing per road or vehicle
+    private static final Color BACKGROUND = new Color(30, 30, 30);
+    private static final Color ROAD = new Color(100, 100, 100);
+    private static final Color ROAD_MARK = new Color(120, 120, 120);
+    private static final Color INTERSECTION = new Color(60, 60, 70);
+    private static final Color APARTMENT = new Color(200, 100, 0);
+    private static final Color PARKING = new Color(200, 50, 150);
+    private static final Color STATION = new Color(50, 180, 50);
+    private static final Color BUS_A = new Color(255, 0, 255);
+    private static final Color BUS_B = new Color(255, 140, 0);
+    private static final Color BUS_C = new Color(0, 255, 255);
+    private static final Color BUS_A_ROUTE = new Color(255, 0, 255, 200);
+    private static final Color BUS_B_ROUTE = new Color(255, 140, 0, 200);
+    private static final Color BUS_C_ROUTE = new Color(0, 255, 255, 200);
+    private static final Color BUS_OTHER_ROUTE = new Color(255, 255, 0, 200);
+    private static final Color AMBULANCE_ROUTE = new Color(255, 0, 0, 180);
+    private static final Color POLICE_ROUTE = new Color(0, 0, 255, 180);
+    private static final Color FIRE_ROUTE = new Color(255, 165, 0, 180);
+    private static final Font LABEL_FONT = new Font("SansSerif", Font.PLAIN, 10);
+    private static final Font VEHICLE_FONT = new Font("Arial", Font.BOLD, 9);
+    private static final Stroke ROAD_STROKE = new BasicStroke(2);
+    private static final Stroke OUTLINE_STROKE = new BasicStroke(1);
+
+    // Cached static layers in device pixels: roads (under the route overlays), buildings and labels (over them), and both
+    // combined for frames without route overlays. Built lazily for the current size and device scale.
+    private BufferedImage roadLayer, buildingLayer, staticLayer;
+    private int layerWidth, layerHeight;
+    private double layerScale;
+
+    // Lane offset of the last calculateOffset call (kept in fields instead of returning a new array per road or vehicle)
+    private double offsetX, offsetY;
+
     public MapPanel(CityGraph graph, SimulationEngine engine) {
         this.graph = graph;
         this.engine = engine;
-        setBackground(new Color(30, 30, 30));
+        setBackground(BACKGROUND);
+        engine.setSnapshotPublishing(true);
     }
 
     // Updates the current user role to apply view filters (e.g., Bus Driver mode).
@@ -31,200 +71,306 @@ public class MapPanel extends JPanel {
         repaint();
     }
 
+    // Drops the cached roads, buildings and labels, e.g. after the topology changed. They are redrawn on the next repaint.
+    public void invalidateStaticLayers() {
+        roadLayer = null;
+        buildingLayer = null;
+        staticLayer = null;
+        repaint();
+    }
+
     private Color getBusColor(String vehicleId) {
-        if (vehicleId.endsWith("A")) return new Color(255, 0, 255);
-        if (vehicleId.endsWith("B")) return new Color(255, 140, 0);
-        if (vehicleId.endsWith("C")) return new Color(0, 255, 255);
+        if (vehicleId.endsWith("A")) return BUS_A;
+        if (vehicleId.endsWith("B")) return BUS_B;
+        if (vehicleId.endsWith("C")) return BUS_C;
         return Color.YELLOW;
     }
 
+    private Color getBusRouteColor(String vehicleId) {
+        if (vehicleId.endsWith("A")) return BUS_A_ROUTE;
+        if (vehicleId.endsWith("B")) return BUS_B_ROUTE;
+        if (vehicleId.endsWith("C")) return BUS_C_ROUTE;
+        return BUS_OTHER_ROUTE;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
+        long paintStart = System.nanoTime();
+        WorldSnapshot world = engine.getSnapshot(); // One consistent state for the whole frame
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         // Centers and scales the map to fit the current window size while maintaining aspect ratio.
-        double virtualWidth = 1250.0;
-        double virtualHeight = 900.0;
+        // The built-in city uses a 1250x900 canvas; larger maps grow it to their bounding box plus the same margin.
+        double virtualWidth = Math.max(1250.0, graph.getMaxX() + graph.getMinX());
+        double virtualHeight = Math.max(900.0, graph.getMaxY() + graph.getMinY());
         double panelWidth = getWidth();
         double panelHeight = getHeight();
         double scale = Math.min(panelWidth / virtualWidth, panelHeight / virtualHeight);
         double translateX = (panelWidth - (virtualWidth * scale)) / 2;
         double translateY = (panelHeight - (virtualHeight * scale)) / 2;
 
-        g2.translate(translateX, translateY);
-        g2.scale(scale, scale);
-
-        // 1. ROADS
-        g2.setStroke(new BasicStroke(2));
+        // 1. STATIC LAYERS (cached), with the route overlays of the current role between roads and buildings
+        boolean busRoutes = "BUS_DRIVER".equals(currentRole);
+        boolean emergencyRoutes = "EMERGENCY".equals(currentRole);
+        prepareStaticLayers(g2, translateX, translateY, scale);
 
-        for (int id : graph.adjList.keySet()) {
-            Node n1 = graph.nodes.get(id);
-            for (Edge e : graph.adjList.get(id)) {
-                Node n2 = e.target;
-                double[] offsets = calculateOffset(n1.x, n1.y, n2.x, n2.y, BASE_LANE_OFFSET);
-                int x1 = (int) (n1.x + offsets[0]);
-                int y1 = (int) (n1.y + offsets[1]);
-                int x2 = (int) (n2.x + offsets[0]);
-                int y2 = (int) (n2.y + offsets[1]);
-
-                g2.setColor(new Color(100, 100, 100));
-                g2.drawLine(x1, y1, x2, y2);
-
-                g2.setColor(new Color(120, 120, 120));
-                g2.fillOval((x1+x2)/2 - 1, (y1+y2)/2 - 1, 3, 3);
-            }
+        if (busRoutes || emergencyRoutes) {
+            g2.drawImage(roadLayer, 0, 0, getWidth(), getHeight(), null);
+        } else {
+            g2.drawImage(staticLayer, 0, 0, getWidth(), getHeight(), null);
         }
 
+        AffineTransform panelTransform = g2.getTransform();
+        g2.translate(translateX, translateY);
+        g2.scale(scale, scale);
+
         // BUS ROUTES
-        if ("BUS_DRIVER".equals(currentRole)) {
-            g2.setStroke(new BasicStroke(2));
-            for (Vehicle v : engine.vehicles) {
-                if (v.type == VehicleType.BUS) {
-                    Color busColor = getBusColor(v.id);
-                    g2.setColor(new Color(busColor.getRed(), busColor.getGreen(), busColor.getBlue(), 200));
+        if (busRoutes) {
+            g2.setStroke(ROAD_STROKE);
+            for (int v = 0; v < world.vehicleCount; v++) {
+                if (world.types[v] == VehicleType.BUS) {
+                    String id = world.ids[v];
+                    g2.setColor(getBusRouteColor(id));
 
                     double specificOffset;
-                    if (v.id.endsWith("A")) specificOffset = 6.0;
-                    else if (v.id.endsWith("B")) specificOffset = 10.0;
+                    if (id.endsWith("A")) specificOffset = 6.0;
+                    else if (id.endsWith("B")) specificOffset = 10.0;
                     else specificOffset = 14.0;
 
-                    drawPath(g2, v, specificOffset);
+                    drawPath(g2, world.paths[v], specificOffset);
                 }
             }
         }
 
         // EMERGENCY ROUTES
-        if ("EMERGENCY".equals(currentRole)) {
-            g2.setStroke(new BasicStroke(2));
-            for (Vehicle v : engine.vehicles) {
-                if (v.type == VehicleType.AMBULANCE || v.type == VehicleType.POLICE_CAR || v.type == VehicleType.FIRE_TRUCK) {
-                    if (v.isReturning && v.type != VehicleType.AMBULANCE) {
+        if (emergencyRoutes) {
+            g2.setStroke(ROAD_STROKE);
+            for (int v = 0; v < world.vehicleCount; v++) {
+                VehicleType type = world.types[v];
+                if (type == VehicleType.AMBULANCE || type == VehicleType.POLICE_CAR || type == VehicleType.FIRE_TRUCK) {
+                    if (world.returning[v] && type != VehicleType.AMBULANCE) {
                         continue;
                     }
 
-                    if (v.type == VehicleType.AMBULANCE) g2.setColor(new Color(255, 0, 0, 180));
-                    else if (v.type == VehicleType.POLICE_CAR) g2.setColor(new Color(0, 0, 255, 180));
-                    else g2.setColor(new Color(255, 165, 0, 180));
+                    if (type == VehicleType.AMBULANCE) g2.setColor(AMBULANCE_ROUTE);
+                    else if (type == VehicleType.POLICE_CAR) g2.setColor(POLICE_ROUTE);
+                    else g2.setColor(FIRE_ROUTE);
 
-                    drawPath(g2, v, 4.0);
+                    drawPath(g2, world.paths[v], 4.0);
                 }
             }
         }
 
-        // 2. NODES AND LIGHTS
-        for (Node n : graph.nodes.values()) {
-            switch (n.type) {
-                case INTERSECTION:
-                    g2.setColor(new Color(60, 60, 70));
-                    g2.fillOval(n.x - 12, n.y - 12, 24, 24);
-
-                    boolean nsGreen = n.trafficLight.northSouthGreen;
+        if (busRoutes || emergencyRoutes) {
+            g2.setTransform(panelTransform);
+            g2.drawImage(buildingLayer, 0, 0, getWidth(), getHeight(), null);
+            g2.translate(translateX, translateY);
+            g2.scale(scale, scale);
+        }
 
-                    g2.setColor(nsGreen ? Color.GREEN : Color.RED);
-                    g2.fillOval(n.x - 4, n.y - 16, 8, 8);
-                    g2.fillOval(n.x - 4, n.y + 8, 8, 8);
+        // 2. TRAFFIC LIGHTS
+        for (int k = 0; k < world.northSouthGreen.length; k++) {
+            int n = graph.intersection(k);
+            int x = graph.nodeX(n), y = graph.nodeY(n);
+            boolean nsGreen = world.northSouthGreen[k];
 
-                    g2.setColor(nsGreen ? Color.RED : Color.GREEN);
-                    g2.fillOval(n.x - 16, n.y - 4, 8, 8);
-                    g2.fillOval(n.x + 8, n.y - 4, 8, 8);
-                    break;
+            g2.setColor(nsGreen ? Color.GREEN : Color.RED);
+            g2.fillOval(x - 4, y - 16, 8, 8);
+            g2.fillOval(x - 4, y + 8, 8, 8);
 
-                case APARTMENT:
-                    g2.setColor(new Color(200, 100, 0));
-                    g2.fillRect(n.x - 8, n.y - 8, 15, 15);
-                    break;
-                case PARKING:
-                    g2.setColor(new Color(200, 50, 150));
-                    g2.fillRect(n.x - 12, n.y - 8, 25, 15);
-                    break;
-                case POLICE: case HOSPITAL: case FIRE_STATION:
-                    g2.setColor(new Color(50, 180, 50));
-                    g2.fillRect(n.x - 12, n.y - 12, 25, 25);
-                    break;
-            }
-            g2.setColor(Color.lightGray);
-            g2.setFont(new Font("SansSerif", Font.PLAIN, 10));
-            if(n.type != NodeType.INTERSECTION) {
-                g2.drawString(n.name, n.x - 10, n.y + 20);
-            }
+            g2.setColor(nsGreen ? Color.RED : Color.GREEN);
+            g2.fillOval(x - 16, y - 4, 8, 8);
+            g2.fillOval(x + 8, y - 4, 8, 8);
         }
 
         // 3. VEHICLES
-        for (Vehicle v : engine.vehicles) {
-            if (v.next == null) continue;
-
-            if ("BUS_DRIVER".equals(currentRole) && v.type != VehicleType.BUS) {
+        AffineTransform mapTransform = g2.getTransform();
+        g2.setFont(VEHICLE_FONT);
+        g2.setStroke(OUTLINE_STROKE);
+        for (int v = 0; v < world.vehicleCount; v++) {
+            if (world.next[v] < 0) continue;
+            VehicleType type = world.types[v];
+            String id = world.ids[v];
+            double progress = world.progress[v];
+
+            if (busRoutes && type != VehicleType.BUS) {
                 continue;
             }
 
             double specificOffset = BASE_LANE_OFFSET;
-            if (v.type == VehicleType.BUS) {
-                if (v.id.endsWith("A")) specificOffset = 6.0;
-                else if (v.id.endsWith("B")) specificOffset = 10.0;
+            if (type == VehicleType.BUS) {
+                if (id.endsWith("A")) specificOffset = 6.0;
+                else if (id.endsWith("B")) specificOffset = 10.0;
                 else specificOffset = 14.0;
             }
 
-            double curLineX = v.current.x + (v.next.x - v.current.x) * v.progress;
-            double curLineY = v.current.y + (v.next.y - v.current.y) * v.progress;
+            int currentX = graph.nodeX(world.current[v]), currentY = graph.nodeY(world.current[v]);
+            int nextX = graph.nodeX(world.next[v]), nextY = graph.nodeY(world.next[v]);
+            double curLineX = currentX + (nextX - currentX) * progress;
+            double curLineY = currentY + (nextY - currentY) * progress;
 
-            double[] offsets = calculateOffset(v.current.x, v.current.y, v.next.x, v.next.y, specificOffset);
-            int drawX = (int) (curLineX + offsets[0]);
-            int drawY = (int) (curLineY + offsets[1]);
+            calculateOffset(currentX, currentY, nextX, nextY, specificOffset);
+            int drawX = (int) (curLineX + offsetX);
+            int drawY = (int) (curLineY + offsetY);
 
             Color vehicleColor;
-            switch (v.type) {
+            switch (type) {
                 case AMBULANCE: vehicleColor = Color.RED; break;
                 case POLICE_CAR: vehicleColor = Color.BLUE; break;
                 case FIRE_TRUCK: vehicleColor = Color.ORANGE; break;
-                case BUS: vehicleColor = getBusColor(v.id); break;
+                case BUS: vehicleColor = getBusColor(id); break;
                 default: vehicleColor = Color.YELLOW; break;
             }
 
             int vWidth = 16; int vHeight = 10;
-            double angle = Math.atan2(v.next.y - v.current.y, v.next.x - v.current.x);
-            AffineTransform old = g2.getTransform();
+            double angle = Math.atan2(nextY - currentY, nextX - currentX);
             g2.translate(drawX, drawY);
             g2.rotate(angle);
 
             g2.setColor(vehicleColor);
             g2.fillRoundRect(-vWidth/2, -vHeight/2, vWidth, vHeight, 4, 4);
             g2.setColor(Color.lightGray);
-            g2.setStroke(new BasicStroke(1));
             g2.drawRoundRect(-vWidth/2, -vHeight/2, vWidth, vHeight, 4, 4);
 
             g2.rotate(-angle);
-            g2.setFont(new Font("Arial", Font.BOLD, 9));
             g2.setColor(Color.WHITE);
-            g2.drawString(v.id, -10, -8);
+            g2.drawString(id, -10, -8);
 
-            g2.setTransform(old);
+            g2.setTransform(mapTransform);
         }
+        engine.getMetrics().framePainted(System.nanoTime() - paintStart);
     }
 
-    // Helper to draw the full path line for a vehicle
-    private void drawPath(Graphics2D g2, Vehicle v, double offset) {
-        if (v.path != null && v.path.size() > 1) {
-            for (int i = 0; i < v.path.size() - 1; i++) {
-                Node n1 = v.path.get(i);
-                Node n2 = v.path.get(i+1);
-                double[] offsets = calculateOffset(n1.x, n1.y, n2.x, n2.y, offset);
-                g2.drawLine((int)(n1.x + offsets[0]), (int)(n1.y + offsets[1]),
-                        (int)(n2.x + offsets[0]), (int)(n2.y + offsets[1]));
+    // Makes sure the cached layers match the panel size and the device scale of the target (e.g. HiDPI screens).
+    private void prepareStaticLayers(Graphics2D g2, double translateX, double translateY, double scale) {
+        double deviceScale = g2.getTransform().getScaleX();
+        int width = Math.max(1, (int) Math.ceil(getWidth() * deviceScale));
+        int height = Math.max(1, (int) Math.ceil(getHeight() * deviceScale));
+        if (width != layerWidth || height != layerHeight || deviceScale != layerScale) {
+            roadLayer = null;
+            buildingLayer = null;
+            staticLayer = null;
+            layerWidth = width;
+            layerHeight = height;
+            layerScale = deviceScale;
+        }
+        if (roadLayer == null) {
+            roadLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D layer = roadLayer.createGraphics();
+            layer.setColor(BACKGROUND);
+            layer.fillRect(0, 0, width, height);
+            layer.dispose();
+            layer = layerGraphics(roadLayer, translateX, translateY, scale);
+            drawRoads(layer);
+            layer.dispose();
+        }
+        if (staticLayer == null) {
+            staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D layer = staticLayer.createGraphics();
+            layer.drawImage(roadLayer, 0, 0, null);
+            layer.dispose();
+            layer = layerGraphics(staticLayer, translateX, translateY, scale);
+            drawBuildings(layer);
+            layer.dispose();
+        }
+        boolean overlays = "BUS_DRIVER".equals(currentRole) || "EMERGENCY".equals(currentRole);
+        if (buildingLayer == null && overlays) {
+            buildingLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB); // Transparent between buildings
+            Graphics2D layer = layerGraphics(buildingLayer, translateX, translateY, scale);
+            drawBuildings(layer);
+            layer.dispose();
+        }
+    }
+
+    private Graphics2D layerGraphics(BufferedImage image, double translateX, double translateY, double scale) {
+        Graphics2D layer = image.createGraphics();
+        layer.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        layer.scale(layerScale, layerScale);
+        layer.translate(translateX, translateY);
+        layer.scale(scale, scale);
+        return layer;
+    }
+
+    // Every directed road in its lane, with a dot at its middle. Reads the CSR arrays, so no Node or Edge objects are needed.
+    private void drawRoads(Graphics2D g2) {
+        g2.setStroke(ROAD_STROKE);
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            int x1 = graph.nodeX(i), y1 = graph.nodeY(i);
+            for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+                int target = graph.edgeTarget(e);
+                int x2 = graph.nodeX(target), y2 = graph.nodeY(target);
+                calculateOffset(x1, y1, x2, y2, BASE_LANE_OFFSET);
+                int ox1 = (int) (x1 + offsetX);
+                int oy1 = (int) (y1 + offsetY);
+                int ox2 = (int) (x2 + offsetX);
+                int oy2 = (int) (y2 + offsetY);
+
+                g2.setColor(ROAD);
+                g2.drawLine(ox1, oy1, ox2, oy2);
+
+                g2.setColor(ROAD_MARK);
+                g2.fillOval((ox1+ox2)/2 - 1, (oy1+oy2)/2 - 1, 3, 3);
             }
         }
     }
 
-    // Calculates perpendicular offset vector for lane positioning
-    private double[] calculateOffset(int x1, int y1, int x2, int y2, double offsetAmount) {
+    // Intersection discs, buildings and their labels (the lights on top are painted per frame).
+    private void drawBuildings(Graphics2D g2) {
+        g2.setFont(LABEL_FONT);
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            Node n = graph.node(i);
+            switch (n.type) {
+                case INTERSECTION:
+                    g2.setColor(INTERSECTION);
+                    g2.fillOval(n.x - 12, n.y - 12, 24, 24);
+                    break;
+                case APARTMENT:
+                    g2.setColor(APARTMENT);
+                    g2.fillRect(n.x - 8, n.y - 8, 15, 15);
+                    break;
+                case PARKING:
+                    g2.setColor(PARKING);
+                    g2.fillRect(n.x - 12, n.y - 8, 25, 15);
+                    break;
+                case POLICE: case HOSPITAL: case FIRE_STATION:
+                    g2.setColor(STATION);
+                    g2.fillRect(n.x - 12, n.y - 12, 25, 25);
+                    break;
+            }
+            if(n.type != NodeType.INTERSECTION) {
+                g2.setColor(Color.lightGray);
+                g2.drawString(n.name, n.x - 10, n.y + 20);
+            }
+        }
+    }
+
+    // Helper to draw the full path line for a vehicle
+    private void drawPath(Graphics2D g2, int[] path, double offset) {
+        if (path == null) return;
+        for (int i = 0; i < path.length - 1; i++) {
+            int x1 = graph.nodeX(path[i]), y1 = graph.nodeY(path[i]);
+            int x2 = graph.nodeX(path[i+1]), y2 = graph.nodeY(path[i+1]);
+            calculateOffset(x1, y1, x2, y2, offset);
+            g2.drawLine((int)(x1 + offsetX), (int)(y1 + offsetY),
+                    (int)(x2 + offsetX), (int)(y2 + offsetY));
+        }
+    }
+
+    // Calculates perpendicular offset vector for lane positioning into offsetX/offsetY
+    private void calculateOffset(int x1, int y1, int x2, int y2, double offsetAmount) {
         double dx = x2 - x1;
         double dy = y2 - y1;
         double dist = Math.sqrt(dx*dx + dy*dy);
-        if (dist == 0) return new double[]{0, 0};
+        if (dist == 0) {
+            offsetX = 0;
+            offsetY = 0;
+            return;
+        }
 
         double uX = dx / dist;
         double uY = dy / dist;
-        return new double[]{-uY * offsetAmount, uX * offsetAmount};
+        offsetX = -uY * offsetAmount;
+        offsetY = uX * offsetAmount;
     }
-}
\ No newline at end of file
+}
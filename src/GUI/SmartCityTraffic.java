@@ -26,13 +26,23 @@ public class SmartCityTraffic extends JFrame {
     private CardLayout cardLayout;
 
     public SmartCityTraffic() {
+        this(new CityGraph());
+    }
+
+    public SmartCityTraffic(CityGraph graph) {
+        this(graph, new SimulationEngine(graph));
+    }
+
+    // Runs on an engine prepared by the caller (e.g. seeded or recording a journal); it must not be started yet.
+    public SmartCityTraffic(CityGraph graph, SimulationEngine engine) {
         setTitle("Smart City Traffic Control System");
         setExtendedState(JFrame.MAXIMIZED_BOTH); // Full Screen
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Start the System
-        cityGraph = new CityGraph();
-        engine = new SimulationEngine(cityGraph);
+        cityGraph = graph;
+        this.engine = engine;
+        engine.getMetrics().registerMBean("gui"); // Tick and paint latencies in JConsole/VisualVM
 
         // Setup main container with CardLayout to switch between views
         cardLayout = new CardLayout();
@@ -1,17 +1,67 @@
 package main;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 import GUI.SmartCityTraffic;
+import models.CityGraph;
+import models.MapFile;
+import models.TimingPlan;
+import simulation.EventJournal;
+import simulation.HeadlessRunner;
+import simulation.SimulationEngine;
 
 public class Main {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // "--headless" skips Swing entirely and runs the simulation as fast as possible (e.g. on display-less batch servers)
+        if (args.length > 0 && args[0].equals("--headless")) {
+            HeadlessRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // "--map FILE" opens a saved or generated map instead of the built-in city, "--seed S" makes the initial traffic
+        // reproducible, "--record FILE" journals the session (including dispatches) for HeadlessRunner --replay and
+        // "--timing-plan FILE" loads per-intersection signal timing (see simulation.SignalOptimizer)
+        String mapFile = null;
+        Long seed = null;
+        String recordFile = null;
+        String timingPlanFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--map": mapFile = args[i + 1]; break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                case "--record": recordFile = args[i + 1]; break;
+                case "--timing-plan": timingPlanFile = args[i + 1]; break;
+                default: System.err.println("Unknown option: " + args[i]);
+            }
+        }
+        CityGraph graph = (mapFile != null) ? MapFile.load(Paths.get(mapFile)) : new CityGraph();
+
+        SimulationEngine engine = new SimulationEngine(graph);
+        long runSeed = (seed != null) ? seed : new Random().nextLong();
+        engine.setSeed(runSeed);
+        if (timingPlanFile != null) engine.applyTimingPlan(TimingPlan.load(Paths.get(timingPlanFile), graph));
+        if (recordFile != null) {
+            EventJournal.Writer journal = new EventJournal.Writer(Paths.get(recordFile), graph, runSeed);
+            engine.recordJournal(journal);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close(engine.getTickCount());
+                } catch (IOException e) {
+                    System.err.println("Could not finish the journal: " + e.getMessage());
+                }
+            }));
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception ignored) {}
 
-        SwingUtilities.invokeLater(() -> new SmartCityTraffic().setVisible(true));
+        SwingUtilities.invokeLater(() -> new SmartCityTraffic(graph, engine).setVisible(true));
     }
-}
\ No newline at end of file
+}
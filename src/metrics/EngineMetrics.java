@@ -0,0 +1,118 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import models.CityGraph;
+
+// Hot-path instrumentation of one simulation engine: tick and path search latency, nodes settled per search, spawns and
+// despawns, queued vehicles, light switches per intersection and paint time of the map. Every recording is a handful of
+// lock-free atomic updates, so the engine thread, routing callers and the EDT record concurrently without blocking.
+public class EngineMetrics implements EngineMetricsMXBean {
+    private final CityGraph graph;
+    private final long tickBudgetNanos;
+    private final Supplier<Histogram> settledNodes; // Owned by the current path search, which can be replaced
+
+    private final Histogram tickNanos = new Histogram();
+    private final Histogram routeNanos = new Histogram();
+    private final Histogram paintNanos = new Histogram();
+    private final LongAdder ticksOverBudget = new LongAdder();
+    private final LongAdder spawns = new LongAdder();
+    private final LongAdder despawns = new LongAdder();
+    private final LongAdder switches = new LongAdder();
+    private final AtomicLongArray switchesByNode; // Per node index; only intersections are ever counted
+    private volatile long queuedVehicles;
+
+    private ObjectName registeredName;
+
+    public EngineMetrics(CityGraph graph, long tickBudgetNanos, Supplier<Histogram> settledNodes) {
+        this.graph = graph;
+        this.tickBudgetNanos = tickBudgetNanos;
+        this.settledNodes = settledNodes;
+        this.switchesByNode = new AtomicLongArray(graph.nodeCount());
+    }
+
+    public void tickCompleted(long nanos) {
+        tickNanos.record(nanos);
+        if (nanos > tickBudgetNanos) ticksOverBudget.increment();
+    }
+
+    public void routeCompleted(long nanos) { routeNanos.record(nanos); }
+    public void framePainted(long nanos) { paintNanos.record(nanos); }
+    public void vehicleSpawned() { spawns.increment(); }
+    public void vehicleRemoved() { despawns.increment(); }
+    public void setQueuedVehicles(long count) { queuedVehicles = count; }
+
+    // Called by the engine thread only, so a plain read-increment-write of the per-node slot is enough.
+    public void lightSwitched(int nodeIndex) {
+        switchesByNode.lazySet(nodeIndex, switchesByNode.get(nodeIndex) + 1);
+        switches.increment();
+    }
+
+    public Histogram tickHistogram() { return tickNanos; }
+    public Histogram routeHistogram() { return routeNanos; }
+    public Histogram paintHistogram() { return paintNanos; }
+
+    public Histogram settledHistogram() {
+        Histogram h = settledNodes.get();
+        return h != null ? h : new Histogram();
+    }
+
+    // Registers this object with the platform MBean server as smarttraffic:type=EngineMetrics,name=<name>.
+    public synchronized void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("smarttraffic:type=EngineMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register engine metrics as " + name, e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (registeredName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException ignored) { // Already gone
+        }
+        registeredName = null;
+    }
+
+    @Override public long getTicks() { return tickNanos.snapshot().count(); }
+    @Override public long getTicksOverBudget() { return ticksOverBudget.sum(); }
+    @Override public long getTickP50Micros() { return tickNanos.snapshot().percentile(0.50) / 1000; }
+    @Override public long getTickP99Micros() { return tickNanos.snapshot().percentile(0.99) / 1000; }
+    @Override public long getTickMaxMicros() { return tickNanos.snapshot().max() / 1000; }
+
+    @Override public long getRoutes() { return routeNanos.snapshot().count(); }
+    @Override public long getRouteP50Micros() { return routeNanos.snapshot().percentile(0.50) / 1000; }
+    @Override public long getRouteP99Micros() { return routeNanos.snapshot().percentile(0.99) / 1000; }
+    @Override public long getSettledNodesP50() { return settledHistogram().snapshot().percentile(0.50); }
+    @Override public long getSettledNodesP99() { return settledHistogram().snapshot().percentile(0.99); }
+
+    @Override public long getSpawns() { return spawns.sum(); }
+    @Override public long getDespawns() { return despawns.sum(); }
+    @Override public long getQueuedVehicles() { return queuedVehicles; }
+    @Override public long getLightSwitches() { return switches.sum(); }
+
+    @Override
+    public long getLightSwitchesAt(int nodeId) {
+        int index = graph.indexOf(nodeId);
+        return index >= 0 ? switchesByNode.get(index) : 0;
+    }
+
+    @Override public long getFrames() { return paintNanos.snapshot().count(); }
+    @Override public long getPaintP50Micros() { return paintNanos.snapshot().percentile(0.50) / 1000; }
+    @Override public long getPaintP99Micros() { return paintNanos.snapshot().percentile(0.99) / 1000; }
+
+    @Override
+    public String toString() {
+        Histogram.Snapshot ticks = tickNanos.snapshot();
+        return String.format("ticks p50 %d us, p99 %d us, max %d us, %d over the %d ms budget",
+                ticks.percentile(0.50) / 1000, ticks.percentile(0.99) / 1000, ticks.max() / 1000,
+                getTicksOverBudget(), tickBudgetNanos / 1_000_000);
+    }
+}
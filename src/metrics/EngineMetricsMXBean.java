@@ -0,0 +1,27 @@
+package metrics;
+
+// Management interface of EngineMetrics, visible in JConsole/VisualVM under "smarttraffic:type=EngineMetrics".
+// Latencies are cumulative since the engine started; the CSV dump (MetricsCsvWriter) has per-interval values.
+public interface EngineMetricsMXBean {
+    long getTicks();
+    long getTicksOverBudget();  // Ticks that took longer than the simulated time they cover (SimulationEngine.TICK_MILLIS)
+    long getTickP50Micros();
+    long getTickP99Micros();
+    long getTickMaxMicros();
+
+    long getRoutes();
+    long getRouteP50Micros();
+    long getRouteP99Micros();
+    long getSettledNodesP50();  // Nodes taken off the heap per path search (route cache hits do not search)
+    long getSettledNodesP99();
+
+    long getSpawns();
+    long getDespawns();
+    long getQueuedVehicles();   // Vehicles queued on roads at the end of the last tick
+    long getLightSwitches();    // Phase changes of all traffic lights
+    long getLightSwitchesAt(int nodeId);
+
+    long getFrames();
+    long getPaintP50Micros();
+    long getPaintP99Micros();
+}
@@ -0,0 +1,99 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free log-linear histogram of non-negative long values (nanoseconds, node counts, ...). Values below 8 get a bucket
+// each; above that every power of two is split into 8 buckets, so any value is known to within 12.5% while the whole
+// long range fits in 488 counters. Recording is two atomic increments and an adder update, safe from any number of threads.
+public class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // Smallest value that falls into the bucket.
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long mantissa = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return mantissa << shift;
+    }
+
+    // Largest value that falls into the bucket.
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        return lowerBound(bucket) + (1L << shift) - 1;
+    }
+
+    // Copies the current counts. Concurrent recordings may or may not be included, but the copy itself never changes.
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) copy[b] = counts.get(b);
+        return new Snapshot(copy, sum.sum());
+    }
+
+    // Frozen histogram contents. Snapshots of the same histogram can be subtracted to get the values of an interval.
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0;
+            for (long c : counts) total += c;
+            this.count = total;
+        }
+
+        public long count() { return count; }
+        public long sum() { return sum; }
+        public double mean() { return count == 0 ? 0 : sum / (double) count; }
+
+        // Value below which the given fraction (0..1) of the recorded values lie, as the midpoint of its bucket; 0 when empty.
+        public long percentile(double fraction) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts[b];
+                if (seen >= rank) return (lowerBound(b) + upperBound(b)) / 2;
+            }
+            return max();
+        }
+
+        // Upper bound of the highest non-empty bucket; 0 when empty.
+        public long max() {
+            for (int b = BUCKETS - 1; b >= 0; b--) {
+                if (counts[b] > 0) return upperBound(b);
+            }
+            return 0;
+        }
+
+        // The values recorded after 'earlier' was taken (earlier must be an older snapshot of the same histogram).
+        public Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[BUCKETS];
+            for (int b = 0; b < BUCKETS; b++) diff[b] = counts[b] - earlier.counts[b];
+            return new Snapshot(diff, sum - earlier.sum);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Appends one CSV row of EngineMetrics per wall-clock interval from a daemon thread, plus a last row on close.
+// Latencies and counts in a row cover only that interval (differences of histogram snapshots), so a slow minute stands
+// out instead of disappearing into the run-wide percentiles.
+public class MetricsCsvWriter implements Closeable {
+    private static final String HEADER = "elapsed_ms,ticks,tick_p50_us,tick_p99_us,tick_max_us,ticks_over_budget,"
+            + "tick_total_ms,routes,route_p50_us,route_p99_us,route_total_ms,settled_p50,settled_p99,"
+            + "spawns,despawns,queued,light_switches,frames,paint_p50_us,paint_p99_us";
+
+    private final EngineMetrics metrics;
+    private final BufferedWriter out;
+    private final ScheduledExecutorService timer;
+    private final long startNanos = System.nanoTime();
+
+    // Values at the previous row
+    private Histogram.Snapshot ticks = Histogram.Snapshot.EMPTY, routes = Histogram.Snapshot.EMPTY;
+    private Histogram.Snapshot settled = Histogram.Snapshot.EMPTY, paints = Histogram.Snapshot.EMPTY;
+    private Histogram settledSource;
+    private long overBudget, spawns, despawns, switches;
+
+    public MetricsCsvWriter(EngineMetrics metrics, Path file, long intervalMillis) throws IOException {
+        this.metrics = metrics;
+        this.out = Files.newBufferedWriter(file);
+        out.write(HEADER);
+        out.newLine();
+        out.flush();
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-csv");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::dumpQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Ends the schedule; the file keeps the rows written so far
+        }
+    }
+
+    // Writes the row for the time since the previous one.
+    public synchronized void dump() throws IOException {
+        Histogram.Snapshot t = metrics.tickHistogram().snapshot();
+        Histogram.Snapshot r = metrics.routeHistogram().snapshot();
+        Histogram.Snapshot p = metrics.paintHistogram().snapshot();
+        Histogram source = metrics.settledHistogram();
+        if (source != settledSource) { // The path search was replaced, so its counts start from zero
+            settledSource = source;
+            settled = Histogram.Snapshot.EMPTY;
+        }
+        Histogram.Snapshot s = source.snapshot();
+
+        Histogram.Snapshot dt = t.minus(ticks), dr = r.minus(routes), ds = s.minus(settled), dp = p.minus(paints);
+        long o = metrics.getTicksOverBudget(), sp = metrics.getSpawns(), de = metrics.getDespawns(), sw = metrics.getLightSwitches();
+
+        out.write(String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d",
+                (System.nanoTime() - startNanos) / 1_000_000,
+                dt.count(), dt.percentile(0.50) / 1000, dt.percentile(0.99) / 1000, dt.max() / 1000, o - overBudget,
+                dt.sum() / 1_000_000,
+                dr.count(), dr.percentile(0.50) / 1000, dr.percentile(0.99) / 1000, dr.sum() / 1_000_000,
+                ds.percentile(0.50), ds.percentile(0.99),
+                sp - spawns, de - despawns, metrics.getQueuedVehicles(), sw - switches,
+                dp.count(), dp.percentile(0.50) / 1000, dp.percentile(0.99) / 1000));
+        out.newLine();
+        out.flush();
+
+        ticks = t; routes = r; settled = s; paints = p;
+        overBudget = o; spawns = sp; despawns = de; switches = sw;
+    }
+
+    // Stops the schedule and writes a final row for the remaining time.
+    @Override
+    public synchronized void close() throws IOException {
+        timer.shutdownNow();
+        try {
+            dump();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package models;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Versioned binary map format holding the CityGraph arrays exactly as they are laid out in memory, so a map is opened
+// with FileChannel.map and used zero-copy: no parsing, no per-node objects, and the topology stays off-heap.
+// Layout (little-endian): a 64-byte header followed by the sections below, each starting on an 8-byte boundary.
+//   header   magic "STCGRAPH", version, nodeCount N, edgeCount E, nameBytes, minX, minY, maxX, maxY, reserved
+//   int[N]   node ids (ascending)         int[N] x         int[N] y         byte[N] NodeType ordinals
+//   int[N+1] name offsets                 byte[nameBytes] UTF-8 names
+//   int[N+1] edge offsets (CSR rows)      int[E] edge targets              double[E] base weights
+//   int[N+1] incoming offsets             int[E] incoming edge indices
+// Usage (converter): BinaryMapFile <input.map | builtin> <output.bmap>
+public class BinaryMapFile {
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = "STCGRAPH".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = 64;
+
+    // True if the file starts with the binary map magic (used to accept both formats wherever a map file is loaded).
+    public static boolean isBinaryMap(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = new byte[MAGIC.length];
+            return in.readNBytes(head, 0, head.length) == head.length && Arrays.equals(head, MAGIC);
+        }
+    }
+
+    // Maps the file read-only and wraps it in a CityGraph. The mapping stays valid after the channel is closed.
+    public static CityGraph load(Path file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + ": binary maps are limited to 2 GB");
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < HEADER_BYTES) throw new IOException(file + ": truncated header");
+
+        byte[] magic = new byte[MAGIC.length];
+        buf.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException(file + ": not a binary map file");
+        int version = buf.getInt(8);
+        if (version != VERSION) throw new IOException(file + ": unsupported binary map version " + version + " (expected " + VERSION + ")");
+
+        int n = buf.getInt(12), e = buf.getInt(16), nameBytes = buf.getInt(20);
+        if (n < 0 || e < 0 || nameBytes < 0) throw new IOException(file + ": corrupt header");
+        Sections s = new Sections(n, e, nameBytes);
+        if (s.end != buf.limit()) {
+            throw new IOException(file + ": expected " + s.end + " bytes for " + n + " nodes and " + e + " edges, found " + buf.limit());
+        }
+
+        CityGraph.MappedNodes nodes = new CityGraph.MappedNodes(
+                slice(buf, s.ids, 4L * n).asIntBuffer(),
+                slice(buf, s.xs, 4L * n).asIntBuffer(),
+                slice(buf, s.ys, 4L * n).asIntBuffer(),
+                slice(buf, s.types, n),
+                slice(buf, s.nameOffsets, 4L * (n + 1)).asIntBuffer(),
+                slice(buf, s.names, nameBytes));
+        CityGraph graph = new CityGraph(nodes,
+                slice(buf, s.edgeOffsets, 4L * (n + 1)).asIntBuffer(),
+                slice(buf, s.edgeTargets, 4L * e).asIntBuffer(),
+                slice(buf, s.edgeWeights, 8L * e).asDoubleBuffer(),
+                slice(buf, s.incomingOffsets, 4L * (n + 1)).asIntBuffer(),
+                slice(buf, s.incomingEdges, 4L * e).asIntBuffer(),
+                buf.getInt(24), buf.getInt(28), buf.getInt(32), buf.getInt(36));
+
+        if (graph.firstEdge(0) != 0 || graph.endEdge(n - 1) != e || graph.endIncoming(n - 1) != e) { // Cheap sanity check
+            throw new IOException(file + ": corrupt edge offsets");
+        }
+        return graph;
+    }
+
+    public static void save(CityGraph graph, Path file) throws IOException {
+        int n = graph.nodeCount(), e = graph.edgeCount();
+        byte[][] names = new byte[n][];
+        int nameBytes = 0;
+        for (int i = 0; i < n; i++) {
+            names[i] = graph.node(i).name.getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[i].length;
+        }
+        Sections s = new Sections(n, e, nameBytes);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            out.bytes(MAGIC);
+            out.putInt(VERSION); out.putInt(n); out.putInt(e); out.putInt(nameBytes);
+            out.putInt(graph.getMinX()); out.putInt(graph.getMinY()); out.putInt(graph.getMaxX()); out.putInt(graph.getMaxY());
+
+            out.align(s.ids);
+            for (int i = 0; i < n; i++) out.putInt(graph.node(i).id);
+            out.align(s.xs);
+            for (int i = 0; i < n; i++) out.putInt(graph.node(i).x);
+            out.align(s.ys);
+            for (int i = 0; i < n; i++) out.putInt(graph.node(i).y);
+            out.align(s.types);
+            for (int i = 0; i < n; i++) out.putByte((byte) graph.node(i).type.ordinal());
+            out.align(s.nameOffsets);
+            int offset = 0;
+            for (int i = 0; i < n; i++) { out.putInt(offset); offset += names[i].length; }
+            out.putInt(offset);
+            out.align(s.names);
+            for (byte[] name : names) out.bytes(name);
+
+            out.align(s.edgeOffsets);
+            for (int i = 0; i < n; i++) out.putInt(graph.firstEdge(i));
+            out.putInt(e);
+            out.align(s.edgeTargets);
+            for (int k = 0; k < e; k++) out.putInt(graph.edgeTarget(k));
+            out.align(s.edgeWeights);
+            for (int k = 0; k < e; k++) out.putDouble(graph.edgeBaseWeight(k));
+            out.align(s.incomingOffsets);
+            for (int i = 0; i < n; i++) out.putInt(graph.firstIncoming(i));
+            out.putInt(e);
+            out.align(s.incomingEdges);
+            for (int k = 0; k < e; k++) out.putInt(graph.incomingEdge(k));
+            out.align(s.end);
+            out.flush();
+        }
+    }
+
+    // Byte offsets of the sections for a given node/edge/name count.
+    private static final class Sections {
+        final long ids, xs, ys, types, nameOffsets, names, edgeOffsets, edgeTargets, edgeWeights, incomingOffsets, incomingEdges, end;
+
+        Sections(int n, int e, int nameBytes) {
+            ids = HEADER_BYTES;
+            xs = align(ids + 4L * n);
+            ys = align(xs + 4L * n);
+            types = align(ys + 4L * n);
+            nameOffsets = align(types + n);
+            names = align(nameOffsets + 4L * (n + 1));
+            edgeOffsets = align(names + nameBytes);
+            edgeTargets = align(edgeOffsets + 4L * (n + 1));
+            edgeWeights = align(edgeTargets + 4L * e);
+            incomingOffsets = align(edgeWeights + 8L * e);
+            incomingEdges = align(incomingOffsets + 4L * (n + 1));
+            end = align(incomingEdges + 4L * e);
+        }
+
+        private static long align(long offset) { return (offset + 7) & ~7L; }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, long offset, long length) {
+        // slice() resets the byte order to big-endian, so set it again on the view
+        return buf.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Sequential little-endian writer with a fixed-size buffer, so saving a large map needs no extra memory.
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = 0;
+
+        Writer(FileChannel channel) { this.channel = channel; }
+
+        void putInt(int v) throws IOException { room(4); buffer.putInt(v); position += 4; }
+        void putDouble(double v) throws IOException { room(8); buffer.putDouble(v); position += 8; }
+        void putByte(byte v) throws IOException { room(1); buffer.put(v); position++; }
+
+        void bytes(byte[] b) throws IOException {
+            for (int k = 0; k < b.length; ) {
+                room(1);
+                int chunk = Math.min(buffer.remaining(), b.length - k);
+                buffer.put(b, k, chunk);
+                k += chunk;
+                position += chunk;
+            }
+        }
+
+        void align(long sectionStart) throws IOException { // Zero padding up to the start of the next section
+            while (position < sectionStart) putByte((byte) 0);
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BinaryMapFile <input.map | builtin> <output.bmap>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        CityGraph graph = args[0].equals("builtin") ? new CityGraph() : MapFile.load(Paths.get(args[0]));
+        save(graph, Paths.get(args[1]));
+        System.out.printf("Converted %s: %d nodes, %d edges in %.2f s -> %s%n", args[0], graph.nodeCount(),
+                graph.edgeCount(), (System.nanoTime() - start) / 1e9, args[1]);
+    }
+}
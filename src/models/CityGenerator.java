@@ -0,0 +1,209 @@
+package models;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Procedurally builds road networks of arbitrary size (10^2 .. 10^6 intersections) for scaling tests. Three layouts are
+// supported: a Manhattan grid, a radial/ring city and a random planar network (jittered lattice with diagonals and
+// removed streets). Apartments, parking lots and emergency stations are attached to intersections according to per-intersection
+// densities, using the same NodeType/coordinate model and weight scale as the built-in city (100 px of road = weight 1.0).
+// Usage: CityGenerator <grid|radial|random> <intersections> <output.map> [seed]
+public class CityGenerator {
+    public enum Layout { GRID, RADIAL, RANDOM }
+
+    private static final int SPACING = 150;               // Distance between neighbouring intersections in map units
+    private static final int MARGIN = 100;                // Offset of the outermost intersections from the origin
+    private static final int BUILDING_OFFSET = 40;        // Buildings sit diagonally next to their intersection
+    private static final double UNITS_PER_WEIGHT = 100.0; // Same scale as the built-in city
+    private static final double BUILDING_ROAD_WEIGHT = 0.5;
+    private static final int RADIAL_SPOKES = 6;           // Intersections on the first ring; ring k has k times as many
+
+    private final Random random;
+    private double apartmentDensity = 0.4;   // Apartments per intersection
+    private double parkingDensity = 0.03;    // Parking lots per intersection
+    private double emergencyDensity = 0.002; // Stations per service (police, hospital, fire) per intersection; at least one each
+
+    public CityGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public CityGenerator setDensities(double apartments, double parking, double emergency) {
+        this.apartmentDensity = apartments;
+        this.parkingDensity = parking;
+        this.emergencyDensity = emergency;
+        return this;
+    }
+
+    // Generates a city with the given layout and number of intersections.
+    public CityGraph generate(Layout layout, int intersections) {
+        if (intersections < 1) throw new IllegalArgumentException("At least one intersection is required");
+
+        int[] xs = new int[intersections];
+        int[] ys = new int[intersections];
+        List<int[]> roads = new ArrayList<>(); // Undirected pairs of intersection positions (0-based)
+
+        switch (layout) {
+            case GRID: buildGrid(xs, ys, roads, 0); break;
+            case RADIAL: buildRadial(xs, ys, roads); break;
+            case RANDOM: buildRandomPlanar(xs, ys, roads); break;
+        }
+
+        CityGraph.Builder builder = new CityGraph.Builder();
+        for (int i = 0; i < intersections; i++) {
+            builder.addNode(i + 1, "INTR" + (i + 1), NodeType.INTERSECTION, xs[i], ys[i]);
+        }
+        for (int[] road : roads) {
+            double dx = xs[road[0]] - xs[road[1]];
+            double dy = ys[road[0]] - ys[road[1]];
+            double w = Math.max(0.1, Math.round(Math.sqrt(dx * dx + dy * dy) / UNITS_PER_WEIGHT * 10) / 10.0);
+            builder.addRoad(road[0] + 1, road[1] + 1, w);
+        }
+
+        int nextId = intersections + 1;
+        nextId = placeBuildings(builder, xs, ys, NodeType.APARTMENT, "APT", count(intersections, apartmentDensity), false, nextId);
+        nextId = placeBuildings(builder, xs, ys, NodeType.PARKING, "P", count(intersections, parkingDensity), true, nextId);
+        nextId = placeBuildings(builder, xs, ys, NodeType.POLICE, "POLICE", count(intersections, emergencyDensity), true, nextId);
+        nextId = placeBuildings(builder, xs, ys, NodeType.HOSPITAL, "HOSP", count(intersections, emergencyDensity), true, nextId);
+        placeBuildings(builder, xs, ys, NodeType.FIRE_STATION, "FIRE", count(intersections, emergencyDensity), true, nextId);
+
+        return builder.build();
+    }
+
+    private static int count(int intersections, double density) {
+        return (int) Math.max(1, Math.round(intersections * density));
+    }
+
+    // Row-major lattice. jitter > 0 perturbs each position by up to that fraction of the spacing.
+    private void buildGrid(int[] xs, int[] ys, List<int[]> roads, double jitter) {
+        int n = xs.length;
+        int cols = (int) Math.ceil(Math.sqrt(n));
+        for (int i = 0; i < n; i++) {
+            double jx = jitter > 0 ? (random.nextDouble() * 2 - 1) * jitter * SPACING : 0;
+            double jy = jitter > 0 ? (random.nextDouble() * 2 - 1) * jitter * SPACING : 0;
+            xs[i] = (int) Math.round(MARGIN + (i % cols) * SPACING + jx);
+            ys[i] = (int) Math.round(MARGIN + (i / cols) * SPACING + jy);
+            if (i % cols + 1 < cols && i + 1 < n) roads.add(new int[]{i, i + 1});
+            if (i + cols < n) roads.add(new int[]{i, i + cols});
+        }
+    }
+
+    // Concentric rings around a centre node: ring k holds RADIAL_SPOKES * k intersections linked around the ring and to the
+    // angularly closest intersection of ring k-1. The outermost ring may be partial.
+    private void buildRadial(int[] xs, int[] ys, List<int[]> roads) {
+        int n = xs.length;
+        int rings = 0;
+        long capacity = 1;
+        while (capacity < n) {
+            rings++;
+            capacity += (long) RADIAL_SPOKES * rings;
+        }
+        int centre = MARGIN + rings * SPACING;
+
+        xs[0] = centre;
+        ys[0] = centre;
+        int ringStart = 1, previousStart = 0, previousSize = 1;
+        for (int k = 1; ringStart < n; k++) {
+            int ringSize = RADIAL_SPOKES * k;
+            int placed = Math.min(ringSize, n - ringStart);
+            for (int j = 0; j < placed; j++) {
+                int i = ringStart + j;
+                double angle = 2 * Math.PI * j / ringSize;
+                xs[i] = (int) Math.round(centre + k * SPACING * Math.cos(angle));
+                ys[i] = (int) Math.round(centre + k * SPACING * Math.sin(angle));
+
+                if (j > 0) roads.add(new int[]{i - 1, i});
+                int inner = (k == 1) ? 0 : previousStart + (int) ((long) j * previousSize / ringSize);
+                roads.add(new int[]{inner, i});
+            }
+            if (placed == ringSize && ringSize > 2) roads.add(new int[]{ringStart + ringSize - 1, ringStart}); // Close the ring
+
+            previousStart = ringStart;
+            previousSize = ringSize;
+            ringStart += placed;
+        }
+    }
+
+    // Jittered lattice (planar because the jitter stays below a quarter of the spacing) plus one random diagonal in some
+    // cells; then streets outside a random spanning tree are removed with some probability, so the network stays connected.
+    private void buildRandomPlanar(int[] xs, int[] ys, List<int[]> roads) {
+        List<int[]> candidates = new ArrayList<>();
+        buildGrid(xs, ys, candidates, 0.24);
+
+        int n = xs.length;
+        int cols = (int) Math.ceil(Math.sqrt(n));
+        for (int i = 0; i + cols + 1 < n; i++) {
+            if (i % cols + 1 >= cols || random.nextDouble() >= 0.3) continue;
+            if (random.nextBoolean()) candidates.add(new int[]{i, i + cols + 1});
+            else candidates.add(new int[]{i + 1, i + cols});
+        }
+
+        // Random spanning tree (Kruskal over a shuffled edge list); non-tree streets are kept with probability 0.75
+        for (int i = candidates.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int[] tmp = candidates.get(i); candidates.set(i, candidates.get(j)); candidates.set(j, tmp);
+        }
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) parent[i] = i;
+        for (int[] road : candidates) {
+            int a = find(parent, road[0]), b = find(parent, road[1]);
+            if (a != b) {
+                parent[a] = b;
+                roads.add(road);
+            } else if (random.nextDouble() < 0.75) {
+                roads.add(road);
+            }
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // Attaches 'count' buildings of one type to intersections, each linked by a short two-way access road.
+    // spread = true picks one intersection per equal slice of the intersection range (stations and parking spread across
+    // the city); otherwise intersections are drawn uniformly at random.
+    private int placeBuildings(CityGraph.Builder builder, int[] xs, int[] ys, NodeType type, String prefix, int count,
+                               boolean spread, int nextId) {
+        int n = xs.length;
+        for (int k = 0; k < count; k++) {
+            int at;
+            if (spread) {
+                long lo = (long) k * n / count, hi = (long) (k + 1) * n / count;
+                at = (int) (lo + random.nextInt((int) Math.max(1, hi - lo)));
+            } else {
+                at = random.nextInt(n);
+            }
+            int dx = random.nextBoolean() ? BUILDING_OFFSET : -BUILDING_OFFSET;
+            int dy = random.nextBoolean() ? BUILDING_OFFSET : -BUILDING_OFFSET;
+
+            String name = (type == NodeType.APARTMENT || type == NodeType.PARKING || k > 0) ? prefix + (k + 1) : prefix;
+            int id = nextId++;
+            builder.addNode(id, name, type, xs[at] + dx, ys[at] + dy);
+            builder.addRoad(id, at + 1, BUILDING_ROAD_WEIGHT);
+        }
+        return nextId;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: CityGenerator <grid|radial|random> <intersections> <output.map> [seed]");
+            System.exit(2);
+        }
+        Layout layout = Layout.valueOf(args[0].toUpperCase());
+        int intersections = Integer.parseInt(args[1]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1L;
+
+        long start = System.nanoTime();
+        CityGraph graph = new CityGenerator(seed).generate(layout, intersections);
+        MapFile.save(graph, Paths.get(args[2]));
+        System.out.printf("Generated %s map: %d nodes, %d edges in %.2f s -> %s%n", layout, graph.nodeCount(),
+                graph.edgeCount(), (System.nanoTime() - start) / 1e9, args[2]);
+    }
+}
@@ -1,42 +1,446 @@
 package models;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 // Represents the entire city layout as a graph. Manages nodes (intersections/buildings) and edges (roads).
+// Topology is stored in compressed-sparse-row (CSR) form: node ids are mapped to dense indices 0..N-1 (in id order) and the outgoing
+// edges of index i occupy the slots firstEdge(i)..endEdge(i)-1 of the primitive edge arrays, sorted by target index.
 public class CityGraph {
-    public Map<Integer, Node> nodes = new HashMap<>(); // Maps node IDs to Node objects for quick lookup
-    public Map<Integer, List<Edge>> adjList = new HashMap<>(); // Adjacency list representing road connections: Node ID -> List of outgoing Edges
+    public Map<Integer, Node> nodes = new NodeView(); // Read-only view: node ID -> Node, backed by the compact arrays
+    public Map<Integer, List<Edge>> adjList = new AdjacencyView(); // Read-only view: node ID -> List of outgoing Edges (CSR row)
 
+    // Dense node arrays (index -> ...). Primitive data lives in buffers: heap arrays for graphs built in memory, or
+    // zero-copy views of a memory-mapped file for graphs opened with BinaryMapFile. Node and Edge objects are created on
+    // first use when the graph is mapped, so a large map costs almost no heap until parts of it are simulated or drawn.
+    private int nodeCount;
+    private IntBuffer nodeIds = IntBuffer.allocate(0);
+    private IntBuffer nodeXs = IntBuffer.allocate(0), nodeYs = IntBuffer.allocate(0); // Coordinates, readable without creating Nodes
+    private AtomicReferenceArray<Node> nodeByIndex = new AtomicReferenceArray<>(0);
+    private int[] idToIndex; // Direct id -> index table when ids are reasonably dense; otherwise lookups binary-search nodeIds
+    private MappedNodes mapped; // Source of lazily created nodes (mapped graphs only)
+
+    // CSR edge arrays (edge index -> ...)
+    private int edgeCount;
+    private IntBuffer edgeOffsets = IntBuffer.allocate(1);
+    private IntBuffer edgeTargets = IntBuffer.allocate(0);
+    private DoubleBuffer edgeWeights = DoubleBuffer.allocate(0);
+    private AtomicReferenceArray<Edge> edgeByIndex = new AtomicReferenceArray<>(0);
+
+    // Reverse adjacency: the incoming edges of node index i are incomingEdges[incomingOffsets[i] .. incomingOffsets[i+1]-1]
+    private IntBuffer incomingOffsets = IntBuffer.allocate(1);
+    private IntBuffer incomingEdges = IntBuffer.allocate(0);
+    private int[] intersections = new int[0]; // Indices of all INTERSECTION nodes
+    private int[] intersectionOf = new int[0]; // Node index -> position in intersections, -1 for other nodes
+    private final Map<NodeType, int[]> nodesByType = new EnumMap<>(NodeType.class); // Indices of the nodes of each type, in id order
+    private int minX, minY, maxX, maxY; // Bounding box of the node coordinates
+
+    private Builder staging = new Builder(); // Used only while the default constructor builds the in-code layout
+
+    // Builds the built-in demo city (18 intersections, 15 apartments, 3 parking lots, 3 emergency stations).
     public CityGraph() {
         initializeNodes();
         initializeConnections();
+        compact(staging);
+        staging = null;
+    }
+
+    private CityGraph(Builder builder) {
+        compact(builder);
+    }
+
+    // Wraps the sections of a binary map file (see BinaryMapFile). The buffers are used as they are, without copying.
+    CityGraph(MappedNodes nodes, IntBuffer edgeOffsets, IntBuffer edgeTargets, DoubleBuffer edgeWeights,
+              IntBuffer incomingOffsets, IntBuffer incomingEdges, int minX, int minY, int maxX, int maxY) {
+        this.staging = null;
+        this.mapped = nodes;
+        this.nodeCount = nodes.ids.limit();
+        this.nodeIds = nodes.ids;
+        this.nodeXs = nodes.xs;
+        this.nodeYs = nodes.ys;
+        this.nodeByIndex = new AtomicReferenceArray<>(nodeCount);
+        this.edgeCount = edgeTargets.limit();
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        this.edgeByIndex = new AtomicReferenceArray<>(edgeCount);
+        this.incomingOffsets = incomingOffsets;
+        this.incomingEdges = incomingEdges;
+        this.minX = minX; this.minY = minY; this.maxX = maxX; this.maxY = maxY;
+
+        // Type lists are small compared to the topology; build them with one counting pass over the type bytes
+        int[] counts = new int[NodeType.values().length];
+        for (int i = 0; i < nodeCount; i++) counts[nodes.types.get(i)]++;
+        int[][] lists = new int[counts.length][];
+        for (int t = 0; t < counts.length; t++) lists[t] = new int[counts[t]];
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < nodeCount; i++) {
+            int t = nodes.types.get(i);
+            lists[t][counts[t]++] = i;
+        }
+        for (NodeType type : NodeType.values()) nodesByType.put(type, lists[type.ordinal()]);
+        intersections = nodesByType.get(NodeType.INTERSECTION);
+        indexIntersections();
+    }
+
+    // Per-node sections of a mapped file, from which Node objects are created on demand.
+    static final class MappedNodes {
+        final IntBuffer ids, xs, ys, nameOffsets;
+        final ByteBuffer types, names;
+
+        MappedNodes(IntBuffer ids, IntBuffer xs, IntBuffer ys, ByteBuffer types, IntBuffer nameOffsets, ByteBuffer names) {
+            this.ids = ids; this.xs = xs; this.ys = ys; this.types = types; this.nameOffsets = nameOffsets; this.names = names;
+        }
+
+        Node create(int i) {
+            int start = nameOffsets.get(i), end = nameOffsets.get(i + 1);
+            byte[] name = new byte[end - start];
+            names.duplicate().position(start).get(name); // Duplicate: the shared buffer's position must not move
+            return new Node(ids.get(i), new String(name, StandardCharsets.UTF_8), NodeType.values()[types.get(i)], xs.get(i), ys.get(i), i);
+        }
     }
 
     // Creates a node.
     private void addNode(int id, String name, NodeType type, int x, int y) {
-        nodes.put(id, new Node(id, name, type, x, y));
-        adjList.put(id, new ArrayList<>());
+        staging.addNode(id, name, type, x, y);
     }
 
     // Creates a directed edge (road) between two nodes with a specific base weight (distance).
     private void addEdge(int from, int to, double w) {
-        if (nodes.containsKey(from) && nodes.containsKey(to)) {
-            adjList.get(from).add(new Edge(nodes.get(to), w));
+        staging.addEdge(from, to, w);
+    }
+
+    // Collects nodes and directed edges for a new CityGraph (used by generators and map loaders). Edges whose endpoints
+    // were never added are dropped when the graph is built; adding a node ID twice keeps the last definition.
+    public static class Builder {
+        private final List<Node> nodes = new ArrayList<>();
+        private int[] edgeFrom = new int[16];
+        private int[] edgeTo = new int[16];
+        private double[] edgeWeight = new double[16];
+        private int edgeCount = 0;
+
+        public Builder addNode(int id, String name, NodeType type, int x, int y) {
+            nodes.add(new Node(id, name, type, x, y, -1)); // Indexed when the graph is built
+            return this;
+        }
+
+        public Builder addEdge(int from, int to, double w) {
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+                edgeWeight = Arrays.copyOf(edgeWeight, edgeCount * 2);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            edgeWeight[edgeCount] = w;
+            edgeCount++;
+            return this;
+        }
+
+        // Adds a road in both directions.
+        public Builder addRoad(int a, int b, double w) {
+            return addEdge(a, b, w).addEdge(b, a, w);
+        }
+
+        public int nodeCount() { return nodes.size(); }
+
+        public CityGraph build() {
+            return new CityGraph(this);
+        }
+    }
+
+    // Converts the staged nodes and edges into the dense CSR arrays.
+    private void compact(Builder staged) {
+        List<Node> sorted = new ArrayList<>(staged.nodes);
+        sorted.sort((a, b) -> Integer.compare(a.id, b.id)); // Stable, so the last definition of a duplicate ID comes last
+        nodeCount = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i + 1 < sorted.size() && sorted.get(i + 1).id == sorted.get(i).id) continue;
+            sorted.set(nodeCount++, sorted.get(i));
+        }
+
+        int[] ids = new int[nodeCount], xs = new int[nodeCount], ys = new int[nodeCount];
+        Node[] byIndex = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            Node n = sorted.get(i);
+            byIndex[i] = new Node(n.id, n.name, n.type, n.x, n.y, i);
+            ids[i] = byIndex[i].id;
+            xs[i] = byIndex[i].x;
+            ys[i] = byIndex[i].y;
+        }
+        nodeIds = IntBuffer.wrap(ids);
+        nodeXs = IntBuffer.wrap(xs);
+        nodeYs = IntBuffer.wrap(ys);
+        nodeByIndex = new AtomicReferenceArray<>(byIndex);
+
+        int maxId = nodeCount == 0 ? 0 : ids[nodeCount - 1];
+        if (nodeCount > 0 && ids[0] >= 0 && maxId <= 4L * nodeCount + 1024) {
+            idToIndex = new int[maxId + 1];
+            Arrays.fill(idToIndex, -1);
+            for (int i = 0; i < nodeCount; i++) idToIndex[ids[i]] = i;
+        }
+
+        // Counting sort of the edges by source index, then sort each row by target index
+        int[] from = new int[staged.edgeCount];
+        int[] to = new int[staged.edgeCount];
+        int[] offsets = new int[nodeCount + 1];
+        for (int e = 0; e < staged.edgeCount; e++) {
+            from[e] = indexOf(staged.edgeFrom[e]);
+            to[e] = indexOf(staged.edgeTo[e]);
+            if (from[e] >= 0 && to[e] >= 0) offsets[from[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) offsets[i + 1] += offsets[i];
+        edgeCount = offsets[nodeCount];
+
+        long[] order = new long[edgeCount]; // (target index << 32 | staging position) keeps the sort stable for duplicate roads
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        for (int e = 0; e < staged.edgeCount; e++) {
+            if (from[e] >= 0 && to[e] >= 0) order[fill[from[e]]++] = ((long) to[e] << 32) | e;
+        }
+        for (int i = 0; i < nodeCount; i++) Arrays.sort(order, offsets[i], offsets[i + 1]);
+
+        int[] targets = new int[edgeCount];
+        double[] weights = new double[edgeCount];
+        edgeByIndex = new AtomicReferenceArray<>(edgeCount);
+        for (int slot = 0; slot < edgeCount; slot++) {
+            int e = (int) order[slot];
+            targets[slot] = to[e];
+            weights[slot] = staged.edgeWeight[e];
+            edgeByIndex.set(slot, new Edge(byIndex[from[e]], byIndex[to[e]], weights[slot], slot));
+        }
+        edgeOffsets = IntBuffer.wrap(offsets);
+        edgeTargets = IntBuffer.wrap(targets);
+        edgeWeights = DoubleBuffer.wrap(weights);
+
+        // Reverse adjacency, built once per topology (edges grouped by target, in edge index order)
+        int[] inOffsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) inOffsets[targets[e] + 1]++;
+        for (int i = 0; i < nodeCount; i++) inOffsets[i + 1] += inOffsets[i];
+        int[] inEdges = new int[edgeCount];
+        fill = Arrays.copyOf(inOffsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) inEdges[fill[targets[e]]++] = e;
+        incomingOffsets = IntBuffer.wrap(inOffsets);
+        incomingEdges = IntBuffer.wrap(inEdges);
+
+        int count = 0;
+        for (Node n : byIndex) if (n.type == NodeType.INTERSECTION) count++;
+        intersections = new int[count];
+        count = 0;
+        for (int i = 0; i < nodeCount; i++) if (byIndex[i].type == NodeType.INTERSECTION) intersections[count++] = i;
+        indexIntersections();
+
+        for (NodeType type : NodeType.values()) {
+            int[] indices = new int[nodeCount];
+            int n = 0;
+            for (int i = 0; i < nodeCount; i++) if (byIndex[i].type == type) indices[n++] = i;
+            nodesByType.put(type, Arrays.copyOf(indices, n));
+        }
+
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+        for (Node n : byIndex) {
+            minX = Math.min(minX, n.x); maxX = Math.max(maxX, n.x);
+            minY = Math.min(minY, n.y); maxY = Math.max(maxY, n.y);
+        }
+        if (nodeCount == 0) minX = minY = maxX = maxY = 0;
+    }
+
+    private void indexIntersections() {
+        intersectionOf = new int[nodeCount];
+        Arrays.fill(intersectionOf, -1);
+        for (int k = 0; k < intersections.length; k++) intersectionOf[intersections[k]] = k;
+    }
+
+    public int nodeCount() { return nodeCount; }
+    public int edgeCount() { return edgeCount; }
+
+    // Maps a node ID to its dense index, or -1 if the ID is unknown.
+    public int indexOf(int id) {
+        if (idToIndex != null) return (id >= 0 && id < idToIndex.length) ? idToIndex[id] : -1;
+        int lo = 0, hi = nodeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midId = nodeIds.get(mid);
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    public int nodeX(int index) { return nodeXs.get(index); }
+    public int nodeY(int index) { return nodeYs.get(index); }
+
+    public Node node(int index) {
+        Node n = nodeByIndex.get(index);
+        if (n == null) { // Mapped graph: create on first use; the CAS makes every caller see the same object
+            n = mapped.create(index);
+            if (!nodeByIndex.compareAndSet(index, null, n)) n = nodeByIndex.get(index);
+        }
+        return n;
+    }
+
+    public Edge edge(int edgeIndex) {
+        Edge e = edgeByIndex.get(edgeIndex);
+        if (e == null) {
+            e = new Edge(node(edgeSource(edgeIndex)), node(edgeTargets.get(edgeIndex)), edgeWeights.get(edgeIndex), edgeIndex);
+            if (!edgeByIndex.compareAndSet(edgeIndex, null, e)) e = edgeByIndex.get(edgeIndex);
+        }
+        return e;
+    }
+
+    // Returns the edge object if it has been created already, else null (roads of a mapped graph nobody has used yet).
+    public Edge edgeIfCreated(int edgeIndex) { return edgeByIndex.get(edgeIndex); }
+
+    // CSR accessors: the outgoing edges of node index i are firstEdge(i) .. endEdge(i) - 1.
+    public int firstEdge(int index) { return edgeOffsets.get(index); }
+    public int endEdge(int index) { return edgeOffsets.get(index + 1); }
+    public int edgeTarget(int edgeIndex) { return edgeTargets.get(edgeIndex); }
+    public double edgeBaseWeight(int edgeIndex) { return edgeWeights.get(edgeIndex); }
+
+    // Node index an edge starts at: the CSR row containing it, found by binary search over the row offsets.
+    public int edgeSource(int edgeIndex) {
+        int lo = 0, hi = nodeCount - 1;
+        while (lo < hi) { // Last row whose first edge is <= edgeIndex
+            int mid = (lo + hi + 1) >>> 1;
+            if (edgeOffsets.get(mid) <= edgeIndex) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    // Reverse CSR accessors: incomingEdge(k) for k in firstIncoming(i) .. endIncoming(i) - 1 are the edges ending at node index i.
+    public int firstIncoming(int index) { return incomingOffsets.get(index); }
+    public int endIncoming(int index) { return incomingOffsets.get(index + 1); }
+    public int incomingEdge(int k) { return incomingEdges.get(k); }
+
+    public int intersectionCount() { return intersections.length; }
+    public int intersection(int k) { return intersections[k]; } // Node index of the k-th intersection
+    public int intersectionIndex(int index) { return intersectionOf[index]; } // k of the intersection with node index, else -1
+
+    // Indices of all nodes of the given type, in id order. The returned array is shared and must not be modified.
+    public int[] nodesOfType(NodeType type) { return nodesByType.get(type); }
+
+    public int getMinX() { return minX; }
+    public int getMinY() { return minY; }
+    public int getMaxX() { return maxX; }
+    public int getMaxY() { return maxY; }
+
+    // Finds the edge index from one node index to another in O(log degree), or -1 if there is no such road.
+    public int edgeIndex(int fromIndex, int toIndex) {
+        int lo = edgeOffsets.get(fromIndex), end = edgeOffsets.get(fromIndex + 1), hi = end;
+        while (lo < hi) { // Lower bound, so the first of any duplicate roads wins like the old linear scan
+            int mid = (lo + hi) >>> 1;
+            if (edgeTargets.get(mid) < toIndex) lo = mid + 1; else hi = mid;
         }
+        return (lo < end && edgeTargets.get(lo) == toIndex) ? lo : -1;
     }
 
     // Retrieves the edge object connecting two specific nodes. Useful for accessing queue data on a specific road segment.
     public Edge getEdge(int fromId, int toId) {
-        if (!adjList.containsKey(fromId)) return null;
-        for (Edge e : adjList.get(fromId)) {
-            if (e.target.id == toId) {
-                return e;
-            }
+        int from = indexOf(fromId);
+        int to = indexOf(toId);
+        if (from < 0 || to < 0) return null;
+        int e = edgeIndex(from, to);
+        return e >= 0 ? edge(e) : null;
+    }
+
+    // Map view of the nodes keyed by ID, iterating in index order.
+    private class NodeView extends AbstractMap<Integer, Node> {
+        @Override public int size() { return nodeCount; }
+        @Override public boolean containsKey(Object key) { return get(key) != null; }
+
+        @Override
+        public Node get(Object key) {
+            if (!(key instanceof Integer)) return null;
+            int i = indexOf((Integer) key);
+            return i >= 0 ? node(i) : null;
+        }
+
+        @Override
+        public Collection<Node> values() {
+            return new NodeList();
+        }
+
+        @Override
+        public Set<Entry<Integer, Node>> entrySet() {
+            return new IndexedEntrySet<Node>() {
+                @Override Node valueAt(int i) { return node(i); }
+            };
+        }
+    }
+
+    // Map view of the adjacency list keyed by node ID. Each value is a read-only window onto that node's CSR row.
+    private class AdjacencyView extends AbstractMap<Integer, List<Edge>> {
+        @Override public int size() { return nodeCount; }
+        @Override public boolean containsKey(Object key) { return key instanceof Integer && indexOf((Integer) key) >= 0; }
+
+        @Override
+        public List<Edge> get(Object key) {
+            if (!(key instanceof Integer)) return null;
+            int i = indexOf((Integer) key);
+            return i >= 0 ? new EdgeRow(i) : null;
+        }
+
+        @Override
+        public Set<Entry<Integer, List<Edge>>> entrySet() {
+            return new IndexedEntrySet<List<Edge>>() {
+                @Override List<Edge> valueAt(int i) { return new EdgeRow(i); }
+            };
+        }
+    }
+
+    private class NodeList extends AbstractList<Node> implements RandomAccess {
+        @Override public Node get(int i) {
+            if (i < 0 || i >= nodeCount) throw new IndexOutOfBoundsException("Index: " + i);
+            return node(i);
+        }
+        @Override public int size() { return nodeCount; }
+    }
+
+    private class EdgeRow extends AbstractList<Edge> implements RandomAccess {
+        private final int first, end;
+        EdgeRow(int index) { first = edgeOffsets.get(index); end = edgeOffsets.get(index + 1); }
+        @Override public Edge get(int k) {
+            if (k < 0 || first + k >= end) throw new IndexOutOfBoundsException("Index: " + k);
+            return edge(first + k);
+        }
+        @Override public int size() { return end - first; }
+    }
+
+    private abstract class IndexedEntrySet<V> extends AbstractSet<Map.Entry<Integer, V>> {
+        abstract V valueAt(int index);
+
+        @Override public int size() { return nodeCount; }
+
+        @Override
+        public Iterator<Map.Entry<Integer, V>> iterator() {
+            return new Iterator<Map.Entry<Integer, V>>() {
+                int i = 0;
+                @Override public boolean hasNext() { return i < nodeCount; }
+                @Override public Map.Entry<Integer, V> next() {
+                    if (i >= nodeCount) throw new NoSuchElementException();
+                    Map.Entry<Integer, V> entry = new AbstractMap.SimpleImmutableEntry<>(nodeIds.get(i), valueAt(i));
+                    i++;
+                    return entry;
+                }
+            };
         }
-        return null;
     }
 
     // Initialises all nodes (intersections, apartments, services) with their specific coordinates for the GUI.
@@ -0,0 +1,188 @@
+package models;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+// Plain-text origin-destination demand, split into time slices:
+//   slice <startSeconds> <endSeconds>
+//   <originId> <destinationId> <VEHICLE_TYPE> <tripsPerHour>
+// Each OD line belongs to the slice above it; slices must not overlap and come in time order (gaps have no demand).
+// Times are simulated seconds from the start of the demand. Blank lines and lines starting with '#' are ignored.
+// The Reader parses one slice at a time, so day-long demand files of any size are streamed instead of loaded.
+public class DemandFile {
+
+    // The demand of one time slice: count OD entries in parallel arrays (node indices, see CityGraph.indexOf).
+    public static final class Slice {
+        public final double start, end; // Simulated seconds, end exclusive
+        public final int count;
+        public final int[] origin;
+        public final int[] destination;
+        public final VehicleType[] type;
+        public final double[] tripsPerHour;
+
+        Slice(double start, double end, int count, int[] origin, int[] destination, VehicleType[] type, double[] tripsPerHour) {
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.origin = origin;
+            this.destination = destination;
+            this.type = type;
+            this.tripsPerHour = tripsPerHour;
+        }
+    }
+
+    // Streams the slices of a demand file for one map.
+    public static final class Reader implements Closeable {
+        private final Path file;
+        private final CityGraph graph;
+        private final BufferedReader in;
+        private int lineNo = 0;
+        private String header; // "slice" line of the next slice, already read
+        private double lastEnd = Double.NEGATIVE_INFINITY;
+
+        public Reader(Path file, CityGraph graph) throws IOException {
+            this.file = file;
+            this.graph = graph;
+            this.in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            header = nextRecord();
+            if (header != null && !header.startsWith("slice")) throw error("expected a slice header: " + header, null);
+        }
+
+        // Parses the next slice, or returns null at the end of the file.
+        public Slice next() throws IOException {
+            if (header == null) return null;
+            String[] h = header.split("\\s+");
+            double start, end;
+            try {
+                if (h.length != 3) throw new IllegalArgumentException("malformed slice header: " + header);
+                start = Double.parseDouble(h[1]);
+                end = Double.parseDouble(h[2]);
+                if (end <= start || start < lastEnd) throw new IllegalArgumentException("slice out of order: " + header);
+            } catch (IllegalArgumentException e) {
+                throw error(e.getMessage(), e);
+            }
+            lastEnd = end;
+
+            int count = 0;
+            int[] origin = new int[16], destination = new int[16];
+            VehicleType[] type = new VehicleType[16];
+            double[] rate = new double[16];
+            String line;
+            while ((line = nextRecord()) != null && !line.startsWith("slice")) {
+                String[] f = line.split("\\s+");
+                try {
+                    if (f.length != 4) throw new IllegalArgumentException("unrecognised record: " + line);
+                    int o = graph.indexOf(Integer.parseInt(f[0]));
+                    int d = graph.indexOf(Integer.parseInt(f[1]));
+                    if (o < 0 || d < 0) throw new IllegalArgumentException("unknown node: " + line);
+                    if (o == d) throw new IllegalArgumentException("origin equals destination: " + line);
+                    double r = Double.parseDouble(f[3]);
+                    if (!(r >= 0) || Double.isInfinite(r)) throw new IllegalArgumentException("bad rate: " + line);
+                    if (count == origin.length) {
+                        origin = Arrays.copyOf(origin, count * 2);
+                        destination = Arrays.copyOf(destination, count * 2);
+                        type = Arrays.copyOf(type, count * 2);
+                        rate = Arrays.copyOf(rate, count * 2);
+                    }
+                    origin[count] = o;
+                    destination[count] = d;
+                    type[count] = VehicleType.valueOf(f[2]);
+                    rate[count] = r;
+                    count++;
+                } catch (IllegalArgumentException e) { // Covers NumberFormatException and unknown vehicle types
+                    throw error(e.getMessage(), e);
+                }
+            }
+            header = line;
+            return new Slice(start, end, count, origin, destination, type, rate);
+        }
+
+        private String nextRecord() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) return line;
+            }
+            return null;
+        }
+
+        private IOException error(String message, Throwable cause) {
+            return new IOException(file + ":" + lineNo + ": " + message, cause);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Writes a synthetic commuter day for the given map: 15-minute slices with a morning peak from apartments to parking
+    // (work), an evening peak back, all-day trips between apartments and a small emergency rate from the stations.
+    // peakTripsPerHour is the city-wide car demand at the height of the peaks.
+    public static void writeCommuterDay(CityGraph graph, Path file, double hours, double peakTripsPerHour, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        int[] apartments = graph.nodesOfType(NodeType.APARTMENT);
+        int[] parking = graph.nodesOfType(NodeType.PARKING);
+        if (parking.length == 0) parking = apartments;
+        int pairs = Math.max(1, Math.min(4 * apartments.length, 20_000)); // OD entries per slice and direction
+        int sliceSeconds = 15 * 60;
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# Smart Traffic Control System demand: commuter day, peak " + peakTripsPerHour + " car trips/h\n");
+            for (int t = 0; t < hours * 3600; t += sliceSeconds) {
+                double hour = (t + sliceSeconds / 2.0) / 3600.0 % 24;
+                double morning = peak(hour, 8.0, 1.0), evening = peak(hour, 17.5, 1.25);
+                double background = 0.15 + 0.25 * peak(hour, 13.0, 4.0);
+                out.write("slice " + t + " " + (t + sliceSeconds) + "\n");
+                writePairs(out, graph, random, apartments, parking, pairs, peakTripsPerHour * 0.85 * morning, VehicleType.CAR);
+                writePairs(out, graph, random, parking, apartments, pairs, peakTripsPerHour * 0.85 * evening, VehicleType.CAR);
+                writePairs(out, graph, random, apartments, apartments, pairs, peakTripsPerHour * background, VehicleType.CAR);
+                writePairs(out, graph, random, graph.nodesOfType(NodeType.POLICE), apartments, 4, 6, VehicleType.POLICE_CAR);
+                writePairs(out, graph, random, graph.nodesOfType(NodeType.HOSPITAL), apartments, 4, 6, VehicleType.AMBULANCE);
+                writePairs(out, graph, random, graph.nodesOfType(NodeType.FIRE_STATION), apartments, 4, 3, VehicleType.FIRE_TRUCK);
+            }
+        }
+    }
+
+    private static double peak(double hour, double centre, double width) {
+        double d = (hour - centre) / width;
+        return Math.exp(-0.5 * d * d);
+    }
+
+    // Spreads tripsPerHour over 'pairs' random OD entries between the two node sets.
+    private static void writePairs(BufferedWriter out, CityGraph graph, Random random, int[] from, int[] to, int pairs,
+                                   double tripsPerHour, VehicleType type) throws IOException {
+        if (from.length == 0 || to.length == 0 || tripsPerHour < 1e-3) return;
+        double each = tripsPerHour / pairs;
+        for (int k = 0; k < pairs; k++) {
+            Node o = graph.node(from[random.nextInt(from.length)]);
+            Node d = graph.node(to[random.nextInt(to.length)]);
+            if (o != d) out.write(o.id + " " + d.id + " " + type + " " + (float) each + "\n");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DemandFile <input.map | builtin> <output.demand> [hours] [peakTripsPerHour] [seed]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        CityGraph graph = args[0].equals("builtin") ? new CityGraph() : MapFile.load(Paths.get(args[0]));
+        double hours = args.length > 2 ? Double.parseDouble(args[2]) : 24;
+        double peak = args.length > 3 ? Double.parseDouble(args[3]) : 3600;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1L;
+        writeCommuterDay(graph, Paths.get(args[1]), hours, peak, seed);
+        System.out.printf("Generated %.1f h of commuter demand in %.2f s -> %s%n", hours,
+                (System.nanoTime() - start) / 1e9, args[1]);
+    }
+}
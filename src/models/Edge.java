@@ -1,21 +1,25 @@
 package models;
 
-import java.util.concurrent.PriorityBlockingQueue;
-
-// Represents a directed road segment connecting two nodes. Contains a priority queue to manage traffic flow and congestion data.
+// Represents a directed road segment connecting two nodes. Immutable topology created by CityGraph: the road's vehicle
+// queue is part of each simulation run's WorldState.
 public class Edge {
-    public Node target;
-    double baseWeight;
-    public PriorityBlockingQueue<Vehicle> vehicleQueue; // Thread-safe queue that orders vehicles by priority (Emergency > Normal)
+    public final Node source;
+    public final Node target;
+    public final int index; // Position of this road in the CityGraph CSR edge arrays
+    public final boolean northSouth; // Approach tag: true if this road enters its target vertically (N/S phase), false for E/W
+    final double baseWeight;
 
-    public Edge(Node target, double weight) {
+    Edge(Node source, Node target, double weight, int index) {
+        this.source = source;
         this.target = target;
         this.baseWeight = weight;
-        this.vehicleQueue = new PriorityBlockingQueue<>();
+        this.index = index;
+        int dx = Math.abs(source.x - target.x);
+        int dy = Math.abs(source.y - target.y);
+        this.northSouth = dy > dx;
     }
 
-    // Calculates the dynamic cost of this road for path finding. Formula = Base Distance + Queue Size.
-    public double getCurrentWeight() {
-        return baseWeight + (vehicleQueue.size() * 0.5);
+    public double getBaseWeight() {
+        return baseWeight;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package models;
+
+import java.util.Arrays;
+
+// Per-edge vehicle queue specialised for the simulation's access pattern. Keeps one FIFO ring buffer per VehicleType
+// priority class, so the head is found in O(#classes) and removing the head of a class is O(1). The ordering is the same
+// as Vehicle.compareTo: lower priority value first (emergency vehicles), then earlier entry within a class.
+// Mutations are synchronized; peek() and size() are lock-free reads of volatile fields, so routing and the per-tick
+// look-ahead never take the lock.
+public class LaneQueue {
+    private static final int CLASSES = maxPriority();
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final Vehicle[][] rings = new Vehicle[CLASSES][];
+    private final int[] heads = new int[CLASSES];
+    private final int[] counts = new int[CLASSES];
+
+    private volatile int size = 0;
+    private volatile Vehicle head = null; // Cached front of the queue, refreshed after every mutation
+
+    private static int maxPriority() {
+        int max = 0;
+        for (VehicleType t : VehicleType.values()) max = Math.max(max, t.priority);
+        return max;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    // Returns the vehicle that is allowed to leave this road first, or null if the road is empty.
+    public Vehicle peek() { return head; }
+
+    public synchronized void add(Vehicle v) {
+        append(v);
+        refreshHead();
+    }
+
+    // Adds vehicles[from .. to-1] with a single lock acquisition and head refresh (batch spawns).
+    public synchronized void addAll(Vehicle[] vehicles, int from, int to) {
+        for (int i = from; i < to; i++) append(vehicles[i]);
+        refreshHead();
+    }
+
+    private void append(Vehicle v) {
+        int c = v.type.priority - 1;
+        Vehicle[] ring = rings[c];
+        if (ring == null) {
+            ring = rings[c] = new Vehicle[INITIAL_CAPACITY];
+        } else if (counts[c] == ring.length) {
+            ring = grow(c);
+        }
+
+        // Append; vehicles are almost always stamped in order, but keep compareTo order if a later stamp got here first
+        int mask = ring.length - 1;
+        int pos = counts[c];
+        while (pos > 0) {
+            Vehicle prev = ring[(heads[c] + pos - 1) & mask];
+            if (prev.compareTo(v) <= 0) break;
+            ring[(heads[c] + pos) & mask] = prev;
+            pos--;
+        }
+        ring[(heads[c] + pos) & mask] = v;
+        counts[c]++;
+        size++;
+    }
+
+    // Removes the given vehicle. O(1) when it is at the front of its priority class (the usual case), O(n) otherwise.
+    public synchronized boolean remove(Vehicle v) {
+        int c = v.type.priority - 1;
+        Vehicle[] ring = rings[c];
+        int n = counts[c];
+        if (ring == null || n == 0) return false;
+
+        int mask = ring.length - 1;
+        int h = heads[c];
+        if (ring[h] == v) {
+            ring[h] = null;
+            heads[c] = (h + 1) & mask;
+        } else {
+            int k = 1;
+            while (k < n && ring[(h + k) & mask] != v) k++;
+            if (k == n) return false;
+            for (; k < n - 1; k++) ring[(h + k) & mask] = ring[(h + k + 1) & mask];
+            ring[(h + n - 1) & mask] = null;
+        }
+        counts[c]--;
+        size--;
+        refreshHead();
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (int c = 0; c < CLASSES; c++) {
+            if (rings[c] != null) Arrays.fill(rings[c], null);
+            heads[c] = 0;
+            counts[c] = 0;
+        }
+        size = 0;
+        head = null;
+    }
+
+    private Vehicle[] grow(int c) {
+        Vehicle[] old = rings[c];
+        Vehicle[] ring = new Vehicle[old.length * 2]; // Stays a power of two for the index masks
+        for (int k = 0; k < counts[c]; k++) ring[k] = old[(heads[c] + k) & (old.length - 1)];
+        rings[c] = ring;
+        heads[c] = 0;
+        return ring;
+    }
+
+    private void refreshHead() {
+        for (int c = 0; c < CLASSES; c++) {
+            if (counts[c] > 0) {
+                head = rings[c][heads[c]];
+                return;
+            }
+        }
+        head = null;
+    }
+}
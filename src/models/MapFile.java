@@ -0,0 +1,62 @@
+package models;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Plain-text map format, one record per line:
+//   node <id> <TYPE> <x> <y> <name>
+//   edge <fromId> <toId> <baseWeight>
+// Blank lines and lines starting with '#' are ignored. Files are streamed, so large generated cities load without
+// holding the text in memory. load() also accepts binary maps (see BinaryMapFile) and opens them memory-mapped.
+public class MapFile {
+
+    public static CityGraph load(Path file) throws IOException {
+        if (BinaryMapFile.isBinaryMap(file)) return BinaryMapFile.load(file);
+
+        CityGraph.Builder builder = new CityGraph.Builder();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] f = line.split("\\s+", 6);
+                try {
+                    if (f[0].equals("node") && f.length == 6) {
+                        builder.addNode(Integer.parseInt(f[1]), f[5], NodeType.valueOf(f[2]),
+                                Integer.parseInt(f[3]), Integer.parseInt(f[4]));
+                    } else if (f[0].equals("edge") && f.length == 4) {
+                        builder.addEdge(Integer.parseInt(f[1]), Integer.parseInt(f[2]), Double.parseDouble(f[3]));
+                    } else {
+                        throw new IOException(file + ":" + lineNo + ": unrecognised record: " + line);
+                    }
+                } catch (IllegalArgumentException e) { // Covers NumberFormatException and unknown node types
+                    throw new IOException(file + ":" + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public static void save(CityGraph graph, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# Smart Traffic Control System map: " + graph.nodeCount() + " nodes, " + graph.edgeCount() + " edges\n");
+            for (int i = 0; i < graph.nodeCount(); i++) {
+                Node n = graph.node(i);
+                out.write("node " + n.id + " " + n.type + " " + n.x + " " + n.y + " " + n.name + "\n");
+            }
+            for (int i = 0; i < graph.nodeCount(); i++) {
+                for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+                    out.write("edge " + graph.node(i).id + " " + graph.node(graph.edgeTarget(e)).id + " "
+                            + graph.edgeBaseWeight(e) + "\n");
+                }
+            }
+        }
+    }
+}
@@ -1,22 +1,21 @@
 package models;
 
 // Represents a vertex in the city graph (Intersection, Apartment, etc.) containing coordinates for GUI rendering.
+// Immutable: created by CityGraph, which may be shared by several simulation runs.
 public class Node {
-    public int id, x, y;
-    public String name;
-    public NodeType type;
-    public TrafficLight trafficLight; // Only initialised if this node is an INTERSECTION
+    public final int id, x, y;
+    public final int index; // Dense index (0..N-1) assigned by CityGraph, -1 while the node is only staged in a Builder
+    public final String name;
+    public final NodeType type; // INTERSECTION nodes have a traffic light in each WorldState
 
-    public Node(int id, String name, NodeType type, int x, int y) {
+    Node(int id, String name, NodeType type, int x, int y, int index) {
         this.id = id;
         this.name = name;
         this.type = type;
         this.x = x;
         this.y = y;
-        if (type == NodeType.INTERSECTION) {
-            this.trafficLight = new TrafficLight();
-        }
+        this.index = index;
     }
 
     @Override public String toString() { return name; }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package models;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Per-intersection signal timing for the adaptive lights (see TrafficLight.setTiming and setOffset). Plain text, one
+// record per line:
+//   light <nodeId> <minTicks> <defaultTicks> <maxTicks> <offsetTicks>
+// Durations and offsets are light updates, i.e. simulation ticks (20 per second). Intersections without a record keep
+// the default timing; blank lines and lines starting with '#' are ignored. A plan belongs to one map: its arrays are
+// indexed by intersection k (see CityGraph.intersection), so it applies to every run on that map.
+public class TimingPlan {
+    public final int[] min;
+    public final int[] normal;
+    public final int[] max;
+    public final int[] offset;
+
+    // The default timing (TrafficLight.MIN/DEFAULT/MAX_DURATION, no offsets) for a map with the given number of intersections.
+    public TimingPlan(int lights) {
+        min = new int[lights];
+        normal = new int[lights];
+        max = new int[lights];
+        offset = new int[lights];
+        Arrays.fill(min, TrafficLight.MIN_DURATION);
+        Arrays.fill(normal, TrafficLight.DEFAULT_DURATION);
+        Arrays.fill(max, TrafficLight.MAX_DURATION);
+    }
+
+    public TimingPlan(TimingPlan other) {
+        min = other.min.clone();
+        normal = other.normal.clone();
+        max = other.max.clone();
+        offset = other.offset.clone();
+    }
+
+    public int size() { return min.length; }
+
+    // Sets the timing and starts the cycle of every light of the world; call before the run or between ticks
+    // (SimulationEngine.applyTimingPlan does this on the engine thread).
+    public void apply(WorldState world) {
+        if (world.graph.intersectionCount() != size()) {
+            throw new IllegalArgumentException("Plan for " + size() + " intersections, map has " + world.graph.intersectionCount());
+        }
+        for (int k = 0; k < size(); k++) {
+            TrafficLight light = world.lightAt(k);
+            light.setTiming(min[k], normal[k], max[k]);
+            light.setOffset(offset[k]);
+        }
+    }
+
+    public static TimingPlan load(Path file, CityGraph graph) throws IOException {
+        TimingPlan plan = new TimingPlan(graph.intersectionCount());
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] f = line.split("\\s+");
+                try {
+                    if (!f[0].equals("light") || f.length != 6) {
+                        throw new IOException(file + ":" + lineNo + ": unrecognised record: " + line);
+                    }
+                    int node = graph.indexOf(Integer.parseInt(f[1]));
+                    int k = (node >= 0) ? graph.intersectionIndex(node) : -1;
+                    if (k < 0) throw new IllegalArgumentException("not an intersection: " + f[1]);
+                    plan.min[k] = Integer.parseInt(f[2]);
+                    plan.normal[k] = Integer.parseInt(f[3]);
+                    plan.max[k] = Integer.parseInt(f[4]);
+                    plan.offset[k] = Integer.parseInt(f[5]);
+                    if (plan.min[k] < 1 || plan.normal[k] < plan.min[k] || plan.max[k] < plan.normal[k]) {
+                        throw new IllegalArgumentException("durations must satisfy 1 <= min <= default <= max: " + line);
+                    }
+                } catch (IllegalArgumentException e) { // Covers NumberFormatException
+                    throw new IOException(file + ":" + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return plan;
+    }
+
+    public void save(CityGraph graph, Path file, String comment) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# Smart Traffic Control System timing plan: " + size() + " lights\n");
+            if (comment != null) out.write("# " + comment + "\n");
+            out.write("# light <nodeId> <minTicks> <defaultTicks> <maxTicks> <offsetTicks>\n");
+            for (int k = 0; k < size(); k++) {
+                out.write("light " + graph.node(graph.intersection(k)).id + " " + min[k] + " " + normal[k] + " "
+                        + max[k] + " " + offset[k] + "\n");
+            }
+        }
+    }
+}
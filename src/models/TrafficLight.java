@@ -1,54 +1,114 @@
 package models;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 // Controls traffic light state and adaptive timing based on vehicle queue density.
 public class TrafficLight {
     public boolean northSouthGreen = true; // True = North/South Green; False = East/West Green
     public int timer = 0;
-    private final int MIN_DURATION = 40;
-    private final int MAX_DURATION = 250;
-    private final int DEFAULT_DURATION = 100;
+
+    // Default phase durations in update() calls (ticks), used until a timing plan sets the light's own (see TimingPlan)
+    public static final int MIN_DURATION = 40;
+    public static final int MAX_DURATION = 250;
+    public static final int DEFAULT_DURATION = 100;
+
+    private int minDuration = MIN_DURATION;
+    private int defaultDuration = DEFAULT_DURATION;
+    private int maxDuration = MAX_DURATION;
+
+    // Vehicles currently queued on the incoming roads of each approach, maintained by WorldState.enter/leave
+    private final AtomicInteger nsQueued = new AtomicInteger();
+    private final AtomicInteger ewQueued = new AtomicInteger();
+
+    void vehicleArrived(boolean northSouth) { (northSouth ? nsQueued : ewQueued).incrementAndGet(); }
+    void vehiclesArrived(boolean northSouth, int count) { (northSouth ? nsQueued : ewQueued).addAndGet(count); }
+    void vehicleLeft(boolean northSouth) { (northSouth ? nsQueued : ewQueued).decrementAndGet(); }
+
+    public int getMinDuration() { return minDuration; }
+    public int getDefaultDuration() { return defaultDuration; }
+    public int getMaxDuration() { return maxDuration; }
+
+    // Sets the phase durations of this light: the green time when an approach is empty while the other waits, when neither
+    // dominates, and when the green approach is heavy. Requires 1 <= min <= normal <= max.
+    public void setTiming(int min, int normal, int max) {
+        if (min < 1 || normal < min || max < normal) {
+            throw new IllegalArgumentException("Bad light timing " + min + "/" + normal + "/" + max);
+        }
+        minDuration = min;
+        defaultDuration = normal;
+        maxDuration = max;
+    }
+
+    // Takes over the timing, phase and timer of another light (not its approach counts).
+    public void copyCycle(TrafficLight other) {
+        minDuration = other.minDuration;
+        defaultDuration = other.defaultDuration;
+        maxDuration = other.maxDuration;
+        northSouthGreen = other.northSouthGreen;
+        timer = other.timer;
+    }
+
+    // Starts the light 'offset' updates into its undisturbed cycle (N/S green, then E/W green, each for the default
+    // duration), so neighbouring lights can be staggered into green waves. Offsets wrap around the cycle.
+    public void setOffset(int offset) {
+        int phase = defaultDuration + 1; // update() calls per phase; the last one switches
+        offset = Math.floorMod(offset, 2 * phase);
+        northSouthGreen = offset < phase;
+        timer = offset % phase;
+    }
+
+    // Advances the light using the approach counts kept up to date by the incoming roads.
+    public void update() {
+        update(nsQueued.get(), ewQueued.get());
+    }
 
     // Adaptive logic: Extends green light duration if the current lane is busy, or switches early if the current lane is empty.
     public void update(int nsQueue, int ewQueue) {
         timer++;
-        int currentTargetDuration = DEFAULT_DURATION;
+        if (timer > targetDuration(nsQueue, ewQueue)) {
+            northSouthGreen = !northSouthGreen;
+            timer = 0;
+        }
+    }
+
+    private int targetDuration(int nsQueue, int ewQueue) {
+        int currentTargetDuration = defaultDuration;
 
         if (northSouthGreen) {
             // If N-S is empty but E/W is waiting, switch fast
             if (nsQueue == 0 && ewQueue > 0) {
-                currentTargetDuration = MIN_DURATION;
+                currentTargetDuration = minDuration;
             }
             // If N-S is heavy, extend duration
             else if (nsQueue > ewQueue + 2) {
-                currentTargetDuration = MAX_DURATION;
+                currentTargetDuration = maxDuration;
             }
         } else {
             // If E-W is empty but N/S is waiting, switch fast
             if (ewQueue == 0 && nsQueue > 0) {
-                currentTargetDuration = MIN_DURATION;
+                currentTargetDuration = minDuration;
             }
             // If E-W is heavy, extend duration
             else if (ewQueue > nsQueue + 2) {
-                currentTargetDuration = MAX_DURATION;
+                currentTargetDuration = maxDuration;
             }
         }
+        return currentTargetDuration;
+    }
 
-        if (timer > currentTargetDuration) {
-            northSouthGreen = !northSouthGreen;
-            timer = 0;
-        }
+    // Number of update() calls until the light switches if the approach counts stay as they are now (the last call switches).
+    // Used by the event-driven engine to schedule the phase change instead of updating the light every tick.
+    public int updatesUntilSwitch() {
+        return Math.max(1, targetDuration(nsQueued.get(), ewQueued.get()) + 1 - timer);
     }
 
-    // Determines if a vehicle approaching from a specific neighbor node has a green light based on its vertical vs horizontal approach angle.
-    public boolean canPass(Node from, Node intersection) {
-        int dx = Math.abs(from.x - intersection.x);
-        int dy = Math.abs(from.y - intersection.y);
-        boolean approachingVertically = dy > dx;
+    // Applies 'updates' update() calls at once; the caller guarantees none of them switches the light (see updatesUntilSwitch).
+    public void skip(long updates) {
+        timer += (int) updates;
+    }
 
-        if (northSouthGreen) {
-            return approachingVertically;
-        } else {
-            return !approachingVertically;
-        }
+    // Determines if a vehicle on the given incoming road has a green light, using the road's precomputed N/S vs E/W approach tag.
+    public boolean canPass(Edge approach) {
+        return northSouthGreen == approach.northSouth;
     }
 }
\ No newline at end of file
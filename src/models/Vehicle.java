@@ -1,37 +1,53 @@
 package models;
 
+import java.util.ArrayList;
 import java.util.List;
 
-// Represents a moving entity in the simulation. Implements Comparable to allow sorting in PriorityQueues based on vehicle type and arrival time.
+// Represents a moving entity in the simulation. Lightweight view onto one slot of the VehicleStore, which holds the actual
+// state in parallel arrays; the GUI and the per-edge queues work with these objects. Implements Comparable to allow sorting
+// in queues based on vehicle type and arrival time.
 public class Vehicle implements Comparable<Vehicle>{
-    public String id;
-    public VehicleType type;
-    public Node current;
-    public Node next;
-    public Node destination;
-    public List<Node> path;
-    public int currentPathIndex = 0;
-    public double progress = 0; 		// Animation state: 0.0 (start of edge) to 1.0 (end of edge)
-    public boolean isReturning = false; // Specific logic for emergency vehicles returning to their station
-    public long entryTime; 				// Used for FIFO ordering within the same priority level
-    public Edge currentEdgeObj = null; 	// Reference to the road (Edge) the vehicle is currently on
-
-    public Vehicle(String id, VehicleType type, Node start, Node dest, List<Node> path) {
+    public final String id;
+    public final VehicleType type;
+    public final int slot;
+    private final VehicleStore store;
+
+    Vehicle(String id, VehicleType type, VehicleStore store, int slot) {
         this.id = id;
         this.type = type;
-        this.current = start;
-        this.destination = dest;
-        this.path = path;
-        this.currentPathIndex = 0;
-        this.isReturning = false;
-        this.entryTime = System.nanoTime(); // Capture precise time for queue ordering
-        if (path.size() > 1) this.next = path.get(1);
+        this.store = store;
+        this.slot = slot;
+    }
+
+    // True while the vehicle is still in the simulation (its slot has not been freed or recycled).
+    public boolean isActive() { return store.views[slot] == this; }
+
+    public Node current() { return store.graph().node(store.current[slot]); }
+    public Node next() { int n = store.next[slot]; return n >= 0 ? store.graph().node(n) : null; }
+    public Node destination() { return store.graph().node(store.destination[slot]); }
+    public double progress() { return store.progressAt(slot); } // Animation state: 0.0 (start of edge) to 1.0 (end of edge)
+    public int currentPathIndex() { return store.pathIndex[slot]; }
+    public boolean isReturning() { return store.returning[slot]; } // Emergency vehicle returning to its station
+    public long entryTime() { return store.entryTime[slot]; } // Used for FIFO ordering within the same priority level
+
+    // Reference to the road (Edge) the vehicle is currently on, or null.
+    public Edge currentEdge() {
+        int e = store.edge[slot];
+        return e >= 0 ? store.graph().edge(e) : null;
+    }
+
+    // The full route as nodes. Allocates a new list, so meant for the GUI rather than the tick loop.
+    public List<Node> path() {
+        int[] route = store.path[slot];
+        List<Node> nodes = new ArrayList<>(route != null ? route.length : 0);
+        if (route != null) for (int index : route) nodes.add(store.graph().node(index));
+        return nodes;
     }
 
     // Priority Queue sorting logic: 1. Priority (Emergency vehicles first). 2. Time (First-In-First-Out for vehicles of the same type).
     public int compareTo(Vehicle other) {
         int priorityComparison = Integer.compare(this.type.priority, other.type.priority);
         if (priorityComparison != 0) return priorityComparison;
-        return Long.compare(this.entryTime, other.entryTime);
+        return Long.compare(this.entryTime(), other.entryTime());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package models;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Structure-of-arrays storage for all vehicles of a simulation. Each vehicle occupies a slot; its hot state (type, node
+// indices, progress, path, edge) lives in parallel primitive arrays so the tick loop walks memory linearly instead of
+// chasing objects. Freed slots are recycled through a free list, so spawning and despawning are O(1); once the arrays have
+// grown to the working-set size, a spawn only allocates the small Vehicle view of the new vehicle. Views are not reused:
+// a view held after its vehicle left must stay inactive (Vehicle.isActive) rather than turn into the slot's next vehicle.
+// The store has a single writer (the engine thread). Other threads should read the engine's WorldSnapshot instead; iterating
+// the store from them only gives a weakly consistent, possibly torn view.
+public class VehicleStore implements Iterable<Vehicle> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CityGraph graph;
+
+    // Per-slot state. Arrays are replaced when the store grows, so never keep references to them across spawns.
+    public byte[] type;           // VehicleType ordinal
+    public int[] current;         // Node index of the node the vehicle last passed
+    public int[] next;            // Node index the vehicle is driving towards, -1 when it has stopped
+    public int[] destination;     // Node index of the trip's destination
+    public double[] progress;     // 0.0 (start of edge) to 1.0 (end of edge)
+    public double[] step;         // Progress per tick on the current edge (speed normalised by edge length)
+    public int[][] path;          // Path handle: node indices of the route (shared, never modified)
+    public int[] pathIndex;       // Position of 'current' in the path
+    public int[] edge;            // CSR index of the road the vehicle is queued on, -1 if none
+    public long[] entryTime;      // Logical stamp used for FIFO ordering within a priority level
+    public boolean[] returning;   // Emergency vehicle on its way back to the station
+    public long[] legTick;        // Event-driven mode: tick at which progress[] was written (see progressAt)
+    public long[] dueTick;        // Event-driven mode: tick at which the vehicle reaches the end of its edge
+    public int[] waitTicks;       // Fixed-step mode: ticks spent held at the end of the current edge (vehicle delay)
+    Vehicle[] views;              // Lightweight object per live vehicle (null for free slots)
+
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int highWater = 0;    // Slots >= highWater have never been used
+    private int size = 0;
+    private volatile long clock = -1; // Last completed tick while progress is derived from legTick/dueTick, -1 otherwise
+
+    public VehicleStore(CityGraph graph) {
+        this.graph = graph;
+        allocateArrays(INITIAL_CAPACITY);
+    }
+
+    public CityGraph graph() { return graph; }
+    public int size() { return size; }
+    public int capacity() { return views.length; }
+    public int highWater() { return highWater; } // Iterate slots 0 .. highWater-1 and skip those that are not live
+    public boolean isLive(int slot) { return views[slot] != null; }
+    public Vehicle view(int slot) { return views[slot]; }
+    public VehicleType typeOf(int slot) { return VehicleType.values()[type[slot]]; }
+
+    // Switches progress between stored (fixed tick: progress[] is updated every tick) and derived (event-driven: progress[]
+    // only changes at edge transitions and is extrapolated to the given tick by progressAt). Pass -1 to go back to stored.
+    public void setClock(long tick) { clock = tick; }
+
+    // Position of the vehicle along its current edge. In event-driven mode a vehicle keeps moving by 'step' per tick from
+    // legTick on and stops one step short of the node until its arrival at dueTick is committed.
+    public double progressAt(int slot) {
+        long now = clock;
+        if (now < 0) return progress[slot];
+        long ticks = Math.min(now, dueTick[slot] - 1) - legTick[slot];
+        return ticks > 0 ? progress[slot] + ticks * step[slot] : progress[slot];
+    }
+
+    // Creates a vehicle at the start of the given path and returns its slot.
+    public int allocate(String id, VehicleType vehicleType, int[] route, int dest) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == views.length) allocateArrays(views.length * 2);
+            slot = highWater++;
+        }
+
+        type[slot] = (byte) vehicleType.ordinal();
+        path[slot] = route;
+        pathIndex[slot] = 0;
+        current[slot] = route[0];
+        next[slot] = route.length > 1 ? route[1] : -1;
+        destination[slot] = dest;
+        progress[slot] = 0;
+        step[slot] = 0;
+        edge[slot] = -1;
+        entryTime[slot] = 0;
+        returning[slot] = false;
+        legTick[slot] = 0;
+        dueTick[slot] = 0;
+        waitTicks[slot] = 0;
+        views[slot] = new Vehicle(id, vehicleType, this, slot);
+        size++;
+        return slot;
+    }
+
+    // Removes a vehicle and recycles its slot.
+    public void free(int slot) {
+        if (views[slot] == null) return;
+        views[slot] = null;
+        path[slot] = null;
+        next[slot] = -1;
+        edge[slot] = -1;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    // Free slots in the order they will be reused (the last one first), for checkpoints.
+    public int[] freeSlotOrder() { return Arrays.copyOf(freeSlots, freeCount); }
+
+    // Checkpoint restore: empties the store and recreates the live slots below highWater (ids[s] != null) with the given
+    // ids and types; the free slots are reused in the given order. The caller then fills the other per-slot arrays.
+    public void restoreSlots(int highWater, String[] ids, byte[] types, int[] freeOrder) {
+        clear();
+        if (views.length < highWater) allocateArrays(Integer.highestOneBit(highWater - 1) << 1);
+        for (int s = 0; s < highWater; s++) {
+            if (ids[s] == null) { // Free slot: must not move, whatever the store held before
+                next[s] = -1;
+                edge[s] = -1;
+                continue;
+            }
+            type[s] = types[s];
+            views[s] = new Vehicle(ids[s], VehicleType.values()[types[s]], this, s);
+            size++;
+        }
+        if (freeSlots.length < freeOrder.length) freeSlots = new int[freeOrder.length];
+        System.arraycopy(freeOrder, 0, freeSlots, 0, freeOrder.length);
+        freeCount = freeOrder.length;
+        this.highWater = highWater;
+    }
+
+    public void clear() {
+        Arrays.fill(views, null);
+        Arrays.fill(path, null);
+        freeCount = 0;
+        highWater = 0;
+        size = 0;
+    }
+
+    private void allocateArrays(int capacity) {
+        type = type == null ? new byte[capacity] : Arrays.copyOf(type, capacity);
+        current = current == null ? new int[capacity] : Arrays.copyOf(current, capacity);
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        destination = destination == null ? new int[capacity] : Arrays.copyOf(destination, capacity);
+        progress = progress == null ? new double[capacity] : Arrays.copyOf(progress, capacity);
+        step = step == null ? new double[capacity] : Arrays.copyOf(step, capacity);
+        path = path == null ? new int[capacity][] : Arrays.copyOf(path, capacity);
+        pathIndex = pathIndex == null ? new int[capacity] : Arrays.copyOf(pathIndex, capacity);
+        edge = edge == null ? new int[capacity] : Arrays.copyOf(edge, capacity);
+        entryTime = entryTime == null ? new long[capacity] : Arrays.copyOf(entryTime, capacity);
+        returning = returning == null ? new boolean[capacity] : Arrays.copyOf(returning, capacity);
+        legTick = legTick == null ? new long[capacity] : Arrays.copyOf(legTick, capacity);
+        dueTick = dueTick == null ? new long[capacity] : Arrays.copyOf(dueTick, capacity);
+        waitTicks = waitTicks == null ? new int[capacity] : Arrays.copyOf(waitTicks, capacity);
+        views = views == null ? new Vehicle[capacity] : Arrays.copyOf(views, capacity);
+    }
+
+    // Iterates the live vehicles in slot order. Does not fail when used from other threads while the engine runs (weakly consistent).
+    @Override
+    public Iterator<Vehicle> iterator() {
+        final Vehicle[] snapshot = views;
+        final int limit = Math.min(highWater, snapshot.length);
+        return new Iterator<Vehicle>() {
+            int slot = 0;
+            Vehicle upcoming = fetch();
+
+            private Vehicle fetch() { // Reads each slot once, so a vehicle freed meanwhile is skipped rather than returned as null
+                while (slot < limit) {
+                    Vehicle v = snapshot[slot++];
+                    if (v != null) return v;
+                }
+                return null;
+            }
+
+            @Override public boolean hasNext() { return upcoming != null; }
+
+            @Override
+            public Vehicle next() {
+                if (upcoming == null) throw new NoSuchElementException();
+                Vehicle v = upcoming;
+                upcoming = fetch();
+                return v;
+            }
+        };
+    }
+}
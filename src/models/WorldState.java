@@ -0,0 +1,98 @@
+package models;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The mutable state of one simulation run: its vehicles, the queue of every road and the phase, timer and approach counts
+// of every traffic light. The CityGraph only holds topology and never changes during a run, so any number of worlds can
+// share one graph (e.g. the parallel runs of the signal optimizer on one large map).
+// Road queues are created when the first vehicle enters the road, so a world on a huge mapped graph only pays for the
+// roads in use plus one zero-filled reference per edge. Resetting the traffic swaps in a fresh world (see cleared)
+// instead of emptying every road.
+// Single writer (the engine thread). Queue sizes and heads and the light phases may be read from other threads
+// (routing reads the queue sizes through currentWeight); see LaneQueue and TrafficLight.
+public class WorldState {
+    public final CityGraph graph;
+    public final VehicleStore vehicles;
+
+    private final AtomicReferenceArray<LaneQueue> queues; // Per edge index, null until a vehicle first enters the road
+    private final TrafficLight[] lights;                  // Per intersection k (see CityGraph.intersection)
+    private int[] usedEdges = new int[16];                // Edges whose queue has been created, in creation order
+    private int usedCount = 0;
+
+    public WorldState(CityGraph graph) {
+        this.graph = graph;
+        this.vehicles = new VehicleStore(graph);
+        this.queues = new AtomicReferenceArray<>(graph.edgeCount());
+        this.lights = new TrafficLight[graph.intersectionCount()];
+        for (int k = 0; k < lights.length; k++) lights[k] = new TrafficLight();
+    }
+
+    // A world on the same graph without vehicles, whose lights carry on from this world's: same timing, phase and timer.
+    public WorldState cleared() {
+        WorldState fresh = new WorldState(graph);
+        for (int k = 0; k < lights.length; k++) fresh.lights[k].copyCycle(lights[k]);
+        return fresh;
+    }
+
+    public TrafficLight lightAt(int k) { return lights[k]; }
+
+    // The light of the node with the given index, or null if the node is not an intersection.
+    public TrafficLight light(int nodeIndex) {
+        int k = graph.intersectionIndex(nodeIndex);
+        return k >= 0 ? lights[k] : null;
+    }
+
+    public int queueSize(int edgeIndex) {
+        LaneQueue queue = queues.get(edgeIndex);
+        return queue != null ? queue.size() : 0;
+    }
+
+    // The vehicle allowed to leave the road first, or null if the road is empty.
+    public Vehicle queueHead(int edgeIndex) {
+        LaneQueue queue = queues.get(edgeIndex);
+        return queue != null ? queue.peek() : null;
+    }
+
+    // Routing cost of a road: base distance plus congestion (half a unit per queued vehicle).
+    public double currentWeight(int edgeIndex) {
+        return graph.edgeBaseWeight(edgeIndex) + queueSize(edgeIndex) * 0.5;
+    }
+
+    // Roads whose queue has been created (usedEdge(i) for i in 0 .. usedEdgeCount()-1); every occupied road is among them.
+    public int usedEdgeCount() { return usedCount; }
+    public int usedEdge(int i) { return usedEdges[i]; }
+
+    // Queues a vehicle on the road and counts it on the matching approach of the light at the road's end.
+    public void enter(Edge road, Vehicle v) {
+        queue(road.index).add(v);
+        TrafficLight light = light(road.target.index);
+        if (light != null) light.vehicleArrived(road.northSouth);
+    }
+
+    // Queues vehicles[from .. to-1] (in entry order) under one lock and counts them on the road's light in one step.
+    public void enterAll(Edge road, Vehicle[] batch, int from, int to) {
+        queue(road.index).addAll(batch, from, to);
+        TrafficLight light = light(road.target.index);
+        if (light != null) light.vehiclesArrived(road.northSouth, to - from);
+    }
+
+    // Removes a vehicle from the road's queue and from the approach count of the light at the road's end.
+    public void leave(Edge road, Vehicle v) {
+        LaneQueue queue = queues.get(road.index);
+        if (queue == null || !queue.remove(v)) return;
+        TrafficLight light = light(road.target.index);
+        if (light != null) light.vehicleLeft(road.northSouth);
+    }
+
+    private LaneQueue queue(int edgeIndex) {
+        LaneQueue queue = queues.get(edgeIndex);
+        if (queue == null) {
+            queue = new LaneQueue();
+            queues.set(edgeIndex, queue); // Published to concurrent readers by the volatile write
+            if (usedCount == usedEdges.length) usedEdges = Arrays.copyOf(usedEdges, usedCount * 2);
+            usedEdges[usedCount++] = edgeIndex;
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,178 @@
+package routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import models.CityGraph;
+
+// Router decorator that remembers routes per (origin, destination) pair with LRU eviction. A cached route is only reused
+// while the current weight of its edges stays within a relative tolerance of the cost it had when it was computed;
+// once congestion along the path drifts further, the entry is invalidated and the route is searched again.
+// Returned paths are shared between callers and must not be modified.
+public class CachingRouter implements Router {
+    private final Router delegate;
+    private final CityGraph graph;
+    private final EdgeWeights weights;
+    private final int maxEntries;
+    private final double tolerance;
+
+    private final LinkedHashMap<Long, CachedRoute> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // tolerance is relative: 0.25 drops a route once its current cost differs from the cached cost by more than 25%.
+    public CachingRouter(Router delegate, CityGraph graph, EdgeWeights weights, int maxEntries, double tolerance) {
+        this.delegate = delegate;
+        this.graph = graph;
+        this.weights = weights;
+        this.maxEntries = maxEntries;
+        this.tolerance = tolerance;
+        this.cache = new LinkedHashMap<Long, CachedRoute>(16, 0.75f, true) { // Access order = LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedRoute> eldest) {
+                return size() > CachingRouter.this.maxEntries;
+            }
+        };
+    }
+
+    private static class CachedRoute {
+        final int[] path;
+        final int[] edges;
+        final double cost;
+        CachedRoute(int[] path, int[] edges, double cost) { this.path = path; this.edges = edges; this.cost = cost; }
+    }
+
+    @Override
+    public int[] route(int from, int to) {
+        int[] path = cached(from, to);
+        if (path != null) return path;
+
+        path = delegate.route(from, to);
+        if (path == null) return null; // Unreachable pairs are not cached; congestion never makes them reachable
+        remember(from, to, path);
+        return path;
+    }
+
+    // The cached route if it is still within tolerance, otherwise null (counted as a miss or an invalidation).
+    private int[] cached(int from, int to) {
+        long key = ((long) from << 32) | (to & 0xffffffffL);
+
+        CachedRoute cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            if (Math.abs(currentCost(cached.edges) - cached.cost) <= tolerance * cached.cost) {
+                hits.incrementAndGet();
+                return cached.path;
+            }
+            invalidations.incrementAndGet();
+            synchronized (cache) {
+                cache.remove(key, cached);
+            }
+        } else {
+            misses.incrementAndGet();
+        }
+        return null;
+    }
+
+    private void remember(int from, int to, int[] path) {
+        long key = ((long) from << 32) | (to & 0xffffffffL);
+        int[] edges = new int[path.length - 1];
+        for (int i = 0; i < edges.length; i++) edges[i] = graph.edgeIndex(path[i], path[i + 1]);
+        CachedRoute entry = new CachedRoute(path, edges, currentCost(edges));
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+    }
+
+    // Cached routes are answered as in route(); the misses go to the delegate as one batch.
+    @Override
+    public int[][] routeMany(int from, int[] targets) {
+        int[][] paths = new int[targets.length][];
+        int[] missing = new int[targets.length];
+        int misses = 0;
+        for (int i = 0; i < targets.length; i++) {
+            paths[i] = cached(from, targets[i]);
+            if (paths[i] == null) missing[misses++] = i;
+        }
+        if (misses == 0) return paths;
+
+        int[] missTargets = new int[misses];
+        for (int k = 0; k < misses; k++) missTargets[k] = targets[missing[k]];
+        int[][] found = delegate.routeMany(from, missTargets);
+        for (int k = 0; k < misses; k++) {
+            int[] path = found[k];
+            if (path != null) remember(from, missTargets[k], path);
+            paths[missing[k]] = path;
+        }
+        return paths;
+    }
+
+    private double currentCost(int[] edges) {
+        double cost = 0;
+        for (int e : edges) cost += weights.weight(e);
+        return cost;
+    }
+
+    @Override
+    public SearchStats getStats() { return delegate.getStats(); }
+
+    @Override
+    public void refreshWeights() { delegate.refreshWeights(); }
+
+    public int getMaxEntries() { return maxEntries; }
+    public double getTolerance() { return tolerance; }
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getInvalidations() { return invalidations.get(); }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    // Copies the routes, least recently used first, with the cost each had when it was cached (for checkpoints).
+    public int[][] snapshot(double[][] costsOut) {
+        synchronized (cache) {
+            int[][] routes = new int[cache.size()][];
+            double[] costs = new double[routes.length];
+            int i = 0;
+            for (CachedRoute entry : cache.values()) { // Iterating does not change the access order
+                routes[i] = entry.path;
+                costs[i++] = entry.cost;
+            }
+            costsOut[0] = costs;
+            return routes;
+        }
+    }
+
+    // Replaces the entries with a snapshot (routes[i] cached at costs[i]), keeping its LRU order.
+    public void restore(int[][] routes, double[] costs) {
+        synchronized (cache) {
+            cache.clear();
+            for (int i = 0; i < routes.length; i++) {
+                int[] path = routes[i];
+                int[] edges = new int[path.length - 1];
+                for (int k = 0; k < edges.length; k++) edges[k] = graph.edgeIndex(path[k], path[k + 1]);
+                long key = ((long) path[0] << 32) | (path[path.length - 1] & 0xffffffffL);
+                cache.put(key, new CachedRoute(path, edges, costs[i]));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("route cache: %d entries, %d hits, %d misses, %d invalidations",
+                size(), getHits(), getMisses(), getInvalidations());
+    }
+}
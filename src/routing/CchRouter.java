@@ -0,0 +1,340 @@
+package routing;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import models.CityGraph;
+
+// Customizable contraction hierarchy (CCH). Preprocessing is split in two:
+//   1. Metric-independent, once per topology: a nested dissection order (NestedDissectionOrder) and the chordal
+//      supergraph obtained by contracting the nodes in that order. Every road becomes an arc between its endpoints'
+//      ranks; contracting a node links all of its higher-ranked neighbours ("upward arcs").
+//   2. Customization, whenever the weights change: the current weight of every road is written to its arc and each
+//      lower triangle {x < y < z} is relaxed bottom-up, so arc y-z learns the shortcut y-x-z. This is a linear pass over
+//      precomputed arrays. refreshWeights() snapshots the road weights on the caller's thread and customizes the
+//      snapshot in the background; the result is published as an immutable Metric at the next refresh, so queries
+//      never see a half-customized state and runs stay deterministic however long the customization takes.
+// Queries walk the elimination tree (parent = lowest upward neighbour) from both endpoints, relaxing upward arcs in
+// rank order; no priority queue is needed and the search space is just the ancestors of the two nodes. Paths are
+// exact shortest paths for the weights of the last customization.
+public class CchRouter implements Router {
+    private final CityGraph graph;
+    private final EdgeWeights weights;
+    private final SearchStats stats = new SearchStats();
+
+    // Topology, in rank space
+    private final int[] order;    // rank -> node index
+    private final int[] rank;     // node index -> rank
+    private final int[] upFirst;  // Upward arcs of rank r: upFirst[r] .. upFirst[r+1]-1, sorted by head rank
+    private final int[] upHead;   // arc -> higher-ranked endpoint
+    private final int[] parent;   // Elimination tree: lowest upward neighbour, -1 for roots
+    private final int[] edgeArc;  // Road -> (arc << 1) | 1 if the road runs upward (low rank -> high rank), else arc << 1
+
+    private volatile Metric metric;
+    private CompletableFuture<Metric> pending; // Customization of the latest snapshot, published by the next refresh
+    private final ThreadLocal<QueryScratch> scratch;
+
+    // Arc weights for one customization. up[a] is the cost of travelling arc a from its low to its high endpoint,
+    // down[a] the other direction; the mids record the node a shortcut goes through (-1 for a road).
+    private static final class Metric {
+        final double[] up, down;
+        final int[] upMid, downMid;
+
+        Metric(int arcs) {
+            up = new double[arcs];
+            down = new double[arcs];
+            upMid = new int[arcs];
+            downMid = new int[arcs];
+            Arrays.fill(up, Double.POSITIVE_INFINITY);
+            Arrays.fill(down, Double.POSITIVE_INFINITY);
+            Arrays.fill(upMid, -1);
+            Arrays.fill(downMid, -1);
+        }
+    }
+
+    public CchRouter(CityGraph graph, EdgeWeights weights) {
+        this.graph = graph;
+        this.weights = weights;
+        int n = graph.nodeCount();
+
+        order = NestedDissectionOrder.compute(graph);
+        rank = new int[n];
+        for (int r = 0; r < n; r++) rank[order[r]] = r;
+
+        // Symbolic contraction: the upward neighbours of r, minus the lowest one p, become upward neighbours of p
+        int[][] up = new int[n][];
+        int[] count = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+                int a = rank[i], b = rank[graph.edgeTarget(e)];
+                if (a == b) continue;
+                int lo = Math.min(a, b);
+                if (up[lo] == null) up[lo] = new int[4];
+                else if (count[lo] == up[lo].length) up[lo] = Arrays.copyOf(up[lo], count[lo] * 2);
+                up[lo][count[lo]++] = Math.max(a, b);
+            }
+        }
+        for (int r = 0; r < n; r++) {
+            int[] list = up[r] == null ? new int[0] : sortedUnique(up[r], count[r]);
+            up[r] = list;
+            if (list.length > 1) {
+                int p = list[0];
+                up[p] = merge(up[p] == null ? new int[0] : up[p], count[p], list);
+                count[p] = up[p].length;
+            }
+        }
+
+        upFirst = new int[n + 1];
+        for (int r = 0; r < n; r++) upFirst[r + 1] = upFirst[r] + up[r].length;
+        upHead = new int[upFirst[n]];
+        parent = new int[n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(up[r], 0, upHead, upFirst[r], up[r].length);
+            parent[r] = up[r].length > 0 ? up[r][0] : -1;
+            up[r] = null; // Release as we go; the lists can be large in total
+        }
+
+        edgeArc = new int[graph.edgeCount()];
+        for (int i = 0; i < n; i++) {
+            for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+                int a = rank[i], b = rank[graph.edgeTarget(e)];
+                edgeArc[e] = (a == b) ? -1 : (arc(Math.min(a, b), Math.max(a, b)) << 1) | (a < b ? 1 : 0);
+            }
+        }
+
+        scratch = ThreadLocal.withInitial(() -> new QueryScratch(n));
+        metric = customize(snapshotWeights());
+    }
+
+    public int arcCount() { return upHead.length; }
+
+    @Override
+    public SearchStats getStats() { return stats; }
+
+    // Publishes the metric customized from the previous snapshot and starts customizing the current road weights.
+    // Not thread-safe: call from one thread (the engine does so at a fixed tick interval).
+    @Override
+    public void refreshWeights() {
+        double[] snapshot = snapshotWeights();
+        if (pending != null) metric = pending.join();
+        pending = CompletableFuture.supplyAsync(() -> customize(snapshot));
+    }
+
+    // Blocks until the latest snapshot is customized and publishes it (e.g. before measuring or comparing routes).
+    public void awaitCustomization() {
+        if (pending != null) {
+            metric = pending.join();
+            pending = null;
+        }
+    }
+
+    private double[] snapshotWeights() {
+        double[] snapshot = new double[edgeArc.length];
+        for (int e = 0; e < snapshot.length; e++) snapshot[e] = weights.weight(e);
+        return snapshot;
+    }
+
+    // Customization: computes all arc weights from a snapshot of the road weights.
+    private Metric customize(double[] roadWeights) {
+        Metric m = new Metric(upHead.length);
+
+        for (int e = 0; e < edgeArc.length; e++) {
+            int code = edgeArc[e];
+            if (code < 0) continue; // Self loop, never part of a shortest path
+            int a = code >>> 1;
+            double w = roadWeights[e];
+            if ((code & 1) != 0) {
+                if (w < m.up[a]) m.up[a] = w;
+            } else {
+                if (w < m.down[a]) m.down[a] = w;
+            }
+        }
+
+        // Lower triangles, bottom-up: arcs out of x are final once every node below x has been processed
+        int n = order.length;
+        for (int x = 0; x < n; x++) {
+            for (int i = upFirst[x]; i < upFirst[x + 1]; i++) {
+                int y = upHead[i];
+                double yx = m.down[i], xy = m.up[i]; // y -> x and x -> y
+                if (yx == Double.POSITIVE_INFINITY && xy == Double.POSITIVE_INFINITY) continue;
+                int yz = upFirst[y]; // Arcs of y, scanned alongside the (also sorted) upward neighbours of x
+                for (int j = i + 1; j < upFirst[x + 1]; j++) {
+                    int z = upHead[j];
+                    while (upHead[yz] != z) yz++; // z is an upward neighbour of y (chordality), and heads are sorted
+                    double viaUp = yx + m.up[j];   // y -> x -> z
+                    if (viaUp < m.up[yz]) { m.up[yz] = viaUp; m.upMid[yz] = x; }
+                    double viaDown = m.down[j] + xy; // z -> x -> y
+                    if (viaDown < m.down[yz]) { m.down[yz] = viaDown; m.downMid[yz] = x; }
+                }
+            }
+        }
+        return m;
+    }
+
+    @Override
+    public int[] route(int from, int to) {
+        Metric m = metric;
+        QueryScratch q = scratch.get();
+        q.begin();
+        int s = rank[from], t = rank[to];
+        int settled = 0;
+
+        // Forward search from s over up-weights and backward search from t over down-weights, both along the ancestor
+        // chains and merged in rank order. Above the lowest common ancestor the chains coincide and a node is only
+        // relaxed further while its distance is below the best meeting so far (weights are never negative).
+        q.setForward(s, 0.0, -1);
+        q.setBackward(t, 0.0, -1);
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        int sChain = s, tChain = t; // Next unprocessed ancestor on each chain, -1 past the root
+        while (sChain >= 0 || tChain >= 0) {
+            settled++;
+            boolean forward = tChain < 0 || (sChain >= 0 && sChain <= tChain);
+            boolean backward = sChain < 0 || (tChain >= 0 && tChain <= sChain);
+            int v = forward ? sChain : tChain;
+            if (forward) sChain = parent[sChain];
+            if (backward) tChain = parent[tChain];
+
+            if (forward && backward && q.reachedForward(v) && q.reachedBackward(v) && q.forward[v] + q.backward[v] < best) {
+                best = q.forward[v] + q.backward[v];
+                meet = v;
+            }
+            if (forward && q.reachedForward(v) && q.forward[v] < best) {
+                double base = q.forward[v];
+                for (int a = upFirst[v]; a < upFirst[v + 1]; a++) {
+                    double d = base + m.up[a];
+                    int head = upHead[a];
+                    if (d < q.forwardDistance(head)) q.setForward(head, d, v);
+                }
+            }
+            if (backward && q.reachedBackward(v) && q.backward[v] < best) {
+                double base = q.backward[v];
+                for (int a = upFirst[v]; a < upFirst[v + 1]; a++) {
+                    double d = base + m.down[a];
+                    int head = upHead[a];
+                    if (d < q.backwardDistance(head)) q.setBackward(head, d, v);
+                }
+            }
+        }
+        stats.record(settled);
+        if (meet < 0) return null; // No path found
+
+        // Unpack s ~> meet (upward arcs) and meet ~> t (downward arcs) into road-level nodes
+        q.path.clear();
+        q.path.add(s);
+        q.chain.clear();
+        for (int x = meet; x != s; x = q.forwardPred[x]) q.chain.add(x);
+        int prev = s;
+        for (int k = q.chain.size - 1; k >= 0; k--) {
+            unpack(m, prev, q.chain.data[k], q);
+            prev = q.chain.data[k];
+        }
+        for (int x = meet; x != t; ) {
+            int next = q.backwardPred[x];
+            unpack(m, x, next, q);
+            x = next;
+        }
+
+        int[] path = new int[q.path.size];
+        for (int k = 0; k < path.length; k++) path[k] = order[q.path.data[k]];
+        return path;
+    }
+
+    // Appends the road-level nodes of the arc from -> to (ranks, excluding 'from') to the scratch path.
+    private void unpack(Metric m, int from, int to, QueryScratch q) {
+        IntList stack = q.stack;
+        stack.clear();
+        stack.add(to);
+        int current = from;
+        while (stack.size > 0) {
+            int target = stack.data[stack.size - 1];
+            int lo = Math.min(current, target), hi = Math.max(current, target);
+            int a = arc(lo, hi);
+            int mid = current < target ? m.upMid[a] : m.downMid[a];
+            if (mid < 0) {
+                q.path.add(target);
+                current = target;
+                stack.size--;
+            } else {
+                stack.add(mid); // Go to the middle node first, then on to the target
+            }
+        }
+    }
+
+    // Arc id of the upward arc lo -> hi (which exists by construction).
+    private int arc(int lo, int hi) {
+        int a = Arrays.binarySearch(upHead, upFirst[lo], upFirst[lo + 1], hi);
+        if (a < 0) throw new IllegalStateException("Missing arc " + lo + " -> " + hi);
+        return a;
+    }
+
+    private static int[] sortedUnique(int[] values, int length) {
+        int[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int k = 0; k < sorted.length; k++) {
+            if (n == 0 || sorted[k] != sorted[n - 1]) sorted[n++] = sorted[k];
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    // Sorted union of target[0..targetLength-1] (not necessarily sorted yet) and source[1..] (sorted).
+    private static int[] merge(int[] target, int targetLength, int[] source) {
+        int[] a = sortedUnique(target, targetLength);
+        int[] out = new int[a.length + source.length - 1];
+        int i = 0, j = 1, n = 0;
+        while (i < a.length || j < source.length) {
+            int v;
+            if (j >= source.length || (i < a.length && a[i] < source[j])) v = a[i++];
+            else if (i >= a.length || source[j] < a[i]) v = source[j++];
+            else { v = a[i++]; j++; }
+            out[n++] = v;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static final class IntList {
+        int[] data = new int[64];
+        int size = 0;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void clear() { size = 0; }
+    }
+
+    // Per-thread query buffers, invalidated between queries by generation stamps as in SearchScratch.
+    private static final class QueryScratch {
+        final double[] forward, backward;
+        final int[] forwardPred, backwardPred;
+        final int[] forwardStamp, backwardStamp;
+        final IntList path = new IntList(), chain = new IntList(), stack = new IntList();
+        int generation = 0;
+
+        QueryScratch(int n) {
+            forward = new double[n];
+            backward = new double[n];
+            forwardPred = new int[n];
+            backwardPred = new int[n];
+            forwardStamp = new int[n];
+            backwardStamp = new int[n];
+        }
+
+        void begin() {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(forwardStamp, 0);
+                Arrays.fill(backwardStamp, 0);
+                generation = 1;
+            }
+        }
+
+        boolean reachedForward(int r) { return forwardStamp[r] == generation; }
+        boolean reachedBackward(int r) { return backwardStamp[r] == generation; }
+        double forwardDistance(int r) { return reachedForward(r) ? forward[r] : Double.POSITIVE_INFINITY; }
+        double backwardDistance(int r) { return reachedBackward(r) ? backward[r] : Double.POSITIVE_INFINITY; }
+
+        void setForward(int r, double d, int pred) { forwardStamp[r] = generation; forward[r] = d; forwardPred[r] = pred; }
+        void setBackward(int r, double d, int pred) { backwardStamp[r] = generation; backward[r] = d; backwardPred[r] = pred; }
+    }
+}
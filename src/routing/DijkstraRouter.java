@@ -0,0 +1,102 @@
+package routing;
+
+import models.CityGraph;
+
+// Dijkstra's algorithm over the CSR arrays of a CityGraph using primitive distance/predecessor arrays and an indexed
+// decrease-key heap. Scratch buffers are kept per thread, so the engine thread and the EDT can route concurrently
+// without allocating anything except the returned path. routeMany runs one search until every target is settled.
+public class DijkstraRouter implements Router {
+    private final CityGraph graph;
+    private final EdgeWeights weights;
+    private final ThreadLocal<SearchScratch> scratch;
+    private final SearchStats stats = new SearchStats();
+
+    public DijkstraRouter(CityGraph graph, EdgeWeights weights) {
+        this.graph = graph;
+        this.weights = weights;
+        this.scratch = ThreadLocal.withInitial(() -> new SearchScratch(graph.nodeCount()));
+    }
+
+    @Override
+    public SearchStats getStats() { return stats; }
+
+    @Override
+    public int[] route(int from, int to) {
+        SearchScratch s = scratch.get();
+        s.begin();
+        IndexedMinHeap heap = s.heap;
+        int settled = 0;
+
+        s.set(from, 0.0, -1);
+        heap.insertOrDecrease(from, 0.0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            settled++;
+            if (current == to) break;
+
+            double base = s.dist[current];
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int target = graph.edgeTarget(e);
+                double newDist = base + weights.weight(e);
+                if (newDist < s.distance(target)) {
+                    s.set(target, newDist, current);
+                    heap.insertOrDecrease(target, newDist);
+                }
+            }
+        }
+        stats.record(settled);
+
+        if (!s.reached(to)) return null; // No path found
+        return s.buildPath(to);
+    }
+
+    // The search settles nodes in the same order as route(), and a settled node keeps its predecessor, so every path is
+    // the one route(from, target) would return.
+    @Override
+    public int[][] routeMany(int from, int[] targets) {
+        SearchScratch s = scratch.get();
+        s.begin();
+        IndexedMinHeap heap = s.heap;
+        boolean[] wanted = s.targets();
+        int remaining = 0;
+        for (int t : targets) {
+            if (!wanted[t]) {
+                wanted[t] = true;
+                remaining++;
+            }
+        }
+        int settled = 0;
+
+        s.set(from, 0.0, -1);
+        heap.insertOrDecrease(from, 0.0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            settled++;
+            if (wanted[current]) {
+                wanted[current] = false;
+                if (--remaining == 0) break;
+            }
+
+            double base = s.dist[current];
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int target = graph.edgeTarget(e);
+                double newDist = base + weights.weight(e);
+                if (newDist < s.distance(target)) {
+                    s.set(target, newDist, current);
+                    heap.insertOrDecrease(target, newDist);
+                }
+            }
+        }
+        stats.record(settled);
+
+        int[][] paths = new int[targets.length][];
+        for (int i = 0; i < targets.length; i++) {
+            int t = targets[i];
+            wanted[t] = false; // Unreachable targets were never settled
+            if (s.reached(t)) paths[i] = s.buildPath(t);
+        }
+        return paths;
+    }
+}
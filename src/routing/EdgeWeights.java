@@ -0,0 +1,7 @@
+package routing;
+
+// Supplies the cost of an edge (by CSR edge index) at query time, e.g. base distance plus current congestion.
+@FunctionalInterface
+public interface EdgeWeights {
+    double weight(int edgeIndex);
+}
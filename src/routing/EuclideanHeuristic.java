@@ -0,0 +1,36 @@
+package routing;
+
+import models.CityGraph;
+
+// Straight-line distance to the target, converted to weight units with the smallest weight-per-unit-length ratio of any
+// road in the graph. The ratio is measured rather than assumed, so hand-made maps with short-cut weights (e.g. a 0.2
+// access road that is 50 units long) keep the bound admissible.
+public class EuclideanHeuristic implements Heuristic {
+    private final CityGraph graph;
+    private final double scale;
+
+    public EuclideanHeuristic(CityGraph graph) {
+        this.graph = graph;
+        double minRatio = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            for (int e = graph.firstEdge(i), end = graph.endEdge(i); e < end; e++) {
+                double length = distance(i, graph.edgeTarget(e));
+                if (length > 0) minRatio = Math.min(minRatio, graph.edgeBaseWeight(e) / length);
+            }
+        }
+        this.scale = Double.isInfinite(minRatio) ? 0.0 : Math.max(0.0, minRatio);
+    }
+
+    public double getScale() { return scale; }
+
+    @Override
+    public double estimate(int node, int target) {
+        return scale * distance(node, target);
+    }
+
+    private double distance(int a, int b) {
+        double dx = graph.nodeX(a) - graph.nodeX(b);
+        double dy = graph.nodeY(a) - graph.nodeY(b);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,11 @@
+package routing;
+
+// Lower bound on the remaining cost of a path, used by AStarRouter to search towards the target first. Implementations
+// bound the base weights of the roads; since congestion only ever adds to a road's weight, the bound stays admissible
+// (and consistent) for the congestion-aware weights used at query time.
+@FunctionalInterface
+public interface Heuristic {
+    Heuristic NONE = (node, target) -> 0.0; // Turns A* into plain Dijkstra
+
+    double estimate(int node, int target);
+}
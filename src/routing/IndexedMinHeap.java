@@ -0,0 +1,102 @@
+package routing;
+
+import java.util.Arrays;
+
+// Binary min-heap over node indices with O(log n) decrease-key. Each node appears at most once, so the heap never grows
+// beyond the node count and no per-relaxation objects are created. Equal keys can be ordered by an optional tie key
+// (smaller first); A* uses it to prefer the deeper of two equally promising nodes.
+public class IndexedMinHeap {
+    private final int[] heap;     // heap slot -> node index
+    private final int[] position; // node index -> heap slot, or -1 when not queued
+    private final double[] keys;  // node index -> current priority
+    private final double[] ties;  // node index -> tie-breaking priority among equal keys
+    private int size = 0;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new double[capacity];
+        ties = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() { return size == 0; }
+    public int size() { return size; }
+    public boolean contains(int node) { return position[node] >= 0; }
+    public double peekKey() { return keys[heap[0]]; }
+
+    // Inserts the node, or lowers its key if it is already queued with a higher one.
+    public void insertOrDecrease(int node, double key) {
+        insertOrDecrease(node, key, 0.0);
+    }
+
+    public void insertOrDecrease(int node, double key, double tie) {
+        int slot = position[node];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = node;
+            position[node] = slot;
+            keys[node] = key;
+            ties[node] = tie;
+            siftUp(slot);
+        } else if (key < keys[node] || (key == keys[node] && tie < ties[node])) {
+            keys[node] = key;
+            ties[node] = tie;
+            siftUp(slot);
+        }
+    }
+
+    private boolean less(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && ties[a] < ties[b]);
+    }
+
+    // Removes and returns the node with the smallest key.
+    public int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    // Empties the heap in O(size) so it can be reused by the next search.
+    public void clear() {
+        for (int i = 0; i < size; i++) position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int node = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (!less(node, parentNode)) break;
+            heap[slot] = parentNode;
+            position[parentNode] = slot;
+            slot = parent;
+        }
+        heap[slot] = node;
+        position[node] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int node = heap[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && less(heap[right], heap[child])) child = right;
+            if (!less(heap[child], node)) break;
+            heap[slot] = heap[child];
+            position[heap[slot]] = slot;
+            slot = child;
+        }
+        heap[slot] = node;
+        position[node] = slot;
+    }
+}
@@ -0,0 +1,131 @@
+package routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import models.CityGraph;
+import models.NodeType;
+
+// ALT heuristic (A*, Landmarks, Triangle inequality). For a few landmark nodes L the base-weight distances d(L, v) and
+// d(v, L) to and from every node are precomputed; then for any node v and target t
+//     d(v, t) >= d(L, t) - d(L, v)   and   d(v, t) >= d(v, L) - d(t, L)
+// and the largest of these bounds is the estimate. Landmarks are the emergency stations (the most frequent trip ends)
+// plus intersections on the map boundary, which give the tightest bounds for trips across the city.
+// Distances are stored as floats in node-major order (all landmarks of a node share a cache line); the bounds are
+// lowered by a constant covering the float rounding error, so they can never become inadmissible. A constant (rather
+// than relative) margin keeps equal bounds equal, which matters for A*'s tie-breaking on grid-like maps.
+public class LandmarkHeuristic implements Heuristic {
+    public static final int DEFAULT_LANDMARKS = 8;
+    private static final NodeType[] STATION_TYPES = {NodeType.POLICE, NodeType.HOSPITAL, NodeType.FIRE_STATION};
+
+    private final int[] landmarks;
+    private final int count;
+    private final float[] fromLandmark; // [node * count + k] = d(landmark k, node), +inf if unreachable
+    private final float[] toLandmark;   // [node * count + k] = d(node, landmark k)
+    private final double slack;         // Upper bound on the rounding error of one bound
+
+    public LandmarkHeuristic(CityGraph graph, int landmarkCount) {
+        this.landmarks = selectLandmarks(graph, landmarkCount);
+        this.count = landmarks.length;
+        int n = graph.nodeCount();
+        if ((long) n * count > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many landmarks for " + n + " nodes");
+        this.fromLandmark = new float[n * count];
+        this.toLandmark = new float[n * count];
+
+        int[] sources = new int[graph.edgeCount()]; // Edge -> source node, for the backward searches
+        for (int i = 0; i < n; i++) Arrays.fill(sources, graph.firstEdge(i), graph.endEdge(i), i);
+
+        // One full forward and one full backward search per landmark; they are independent, so run them in parallel
+        IntStream.range(0, 2 * count).parallel().forEach(job -> {
+            int k = job >> 1;
+            boolean reverse = (job & 1) == 1;
+            double[] dist = distancesFrom(graph, sources, landmarks[k], reverse);
+            float[] table = reverse ? toLandmark : fromLandmark;
+            for (int v = 0; v < n; v++) table[v * count + k] = (float) dist[v];
+        });
+
+        float max = 0f;
+        for (float d : fromLandmark) if (d != Float.POSITIVE_INFINITY) max = Math.max(max, d);
+        for (float d : toLandmark) if (d != Float.POSITIVE_INFINITY) max = Math.max(max, d);
+        this.slack = 2 * Math.ulp(max); // Each stored value is off by at most half an ulp, a difference by at most one
+    }
+
+    public int[] getLandmarks() { return landmarks.clone(); }
+
+    @Override
+    public double estimate(int node, int target) {
+        int vRow = node * count, tRow = target * count;
+        double best = 0.0;
+        for (int k = 0; k < count; k++) { // Unreachable pairs (infinite distances) give no bound
+            double lt = fromLandmark[tRow + k], lv = fromLandmark[vRow + k];
+            if (lt != Double.POSITIVE_INFINITY && lv != Double.POSITIVE_INFINITY) best = Math.max(best, lt - lv);
+            double vl = toLandmark[vRow + k], tl = toLandmark[tRow + k];
+            if (vl != Double.POSITIVE_INFINITY && tl != Double.POSITIVE_INFINITY) best = Math.max(best, vl - tl);
+        }
+        return best - slack; // Slightly negative at the target itself, which keeps the offset the same for every node
+    }
+
+    // Picks up to 'max' landmarks: the first station of each emergency service, then the intersection farthest from the
+    // map centre in each of the remaining equal angular sectors.
+    static int[] selectLandmarks(CityGraph graph, int max) {
+        List<Integer> chosen = new ArrayList<>();
+        for (NodeType type : STATION_TYPES) {
+            int[] stations = graph.nodesOfType(type);
+            if (stations.length > 0 && chosen.size() < max) chosen.add(stations[0]);
+        }
+
+        int sectors = max - chosen.size();
+        int intersections = graph.intersectionCount();
+        if (sectors > 0 && intersections > 0) {
+            double cx = (graph.getMinX() + graph.getMaxX()) / 2.0;
+            double cy = (graph.getMinY() + graph.getMaxY()) / 2.0;
+            int[] farthest = new int[sectors];
+            double[] farthestDistance = new double[sectors];
+            Arrays.fill(farthest, -1);
+            for (int k = 0; k < intersections; k++) {
+                int i = graph.intersection(k);
+                double dx = graph.nodeX(i) - cx, dy = graph.nodeY(i) - cy;
+                double angle = Math.atan2(dy, dx) + Math.PI; // 0 .. 2*pi
+                int sector = Math.min(sectors - 1, (int) (angle / (2 * Math.PI) * sectors));
+                double d = dx * dx + dy * dy;
+                if (farthest[sector] < 0 || d > farthestDistance[sector]) {
+                    farthest[sector] = i;
+                    farthestDistance[sector] = d;
+                }
+            }
+            for (int i : farthest) if (i >= 0 && !chosen.contains(i)) chosen.add(i);
+        }
+
+        int[] result = new int[chosen.size()];
+        for (int k = 0; k < result.length; k++) result[k] = chosen.get(k);
+        return result;
+    }
+
+    // Full single-source Dijkstra on base weights, over outgoing roads or (reverse) over incoming roads.
+    private static double[] distancesFrom(CityGraph graph, int[] sources, int source, boolean reverse) {
+        int n = graph.nodeCount();
+        double[] dist = new double[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        dist[source] = 0.0;
+        heap.insertOrDecrease(source, 0.0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            double base = dist[current];
+            int first = reverse ? graph.firstIncoming(current) : graph.firstEdge(current);
+            int end = reverse ? graph.endIncoming(current) : graph.endEdge(current);
+            for (int k = first; k < end; k++) {
+                int e = reverse ? graph.incomingEdge(k) : k;
+                int next = reverse ? sources[e] : graph.edgeTarget(e);
+                double newDist = base + graph.edgeBaseWeight(e);
+                if (newDist < dist[next]) {
+                    dist[next] = newDist;
+                    heap.insertOrDecrease(next, newDist);
+                }
+            }
+        }
+        return dist;
+    }
+}
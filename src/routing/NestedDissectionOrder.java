@@ -0,0 +1,144 @@
+package routing;
+
+import java.util.Arrays;
+import models.CityGraph;
+
+// Computes a contraction order for CchRouter by geometric nested dissection: the node set is cut at the median of its
+// coordinates projected onto x, y or a diagonal (whichever cut touches the fewest nodes), the nodes on the smaller side
+// of the cut that touch the other side form the separator, and both halves are ordered recursively before the
+// separator, which receives the highest ranks. Road networks are nearly planar, so the separators stay small (about the
+// square root of the part size) and so does the fill-in of the hierarchy. Dead ends (buildings with a single access
+// road) are contracted first; they never cause fill-in. The order depends only on topology and coordinates, never on weights.
+final class NestedDissectionOrder {
+    private static final int LEAF_SIZE = 4;  // Parts this small are ranked as they are
+    private static final int DIRECTIONS = 4; // Cut perpendicular to x, y, x+y or x-y
+
+    private final CityGraph graph;
+    private final int[] adjFirst; // Undirected adjacency (outgoing and incoming roads merged)
+    private final int[] adj;
+    private final int[] work;     // Node indices, rearranged in place into the recursive parts
+    private final int[] mark;     // Part label per node, to test membership in O(1)
+    private final int[] order;    // rank -> node index
+    private int label = 0;
+    private int nextRank = 0;
+
+    private NestedDissectionOrder(CityGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        adjFirst = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            adjFirst[i + 1] = adjFirst[i] + (graph.endEdge(i) - graph.firstEdge(i)) + (graph.endIncoming(i) - graph.firstIncoming(i));
+        }
+        adj = new int[adjFirst[n]];
+        int[] sources = new int[graph.edgeCount()];
+        for (int i = 0; i < n; i++) Arrays.fill(sources, graph.firstEdge(i), graph.endEdge(i), i);
+        for (int i = 0, k = 0; i < n; i++) {
+            for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) adj[k++] = graph.edgeTarget(e);
+            for (int j = graph.firstIncoming(i); j < graph.endIncoming(i); j++) adj[k++] = sources[graph.incomingEdge(j)];
+        }
+        mark = new int[n];
+        order = new int[n];
+        int[] rest = new int[n];
+        int restCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isDeadEnd(i)) order[nextRank++] = i; else rest[restCount++] = i;
+        }
+        work = Arrays.copyOf(rest, restCount);
+    }
+
+    // Returns the nodes in contraction order: order[rank] = node index, rank 0 is contracted first.
+    static int[] compute(CityGraph graph) {
+        NestedDissectionOrder nd = new NestedDissectionOrder(graph);
+        nd.dissect(0, nd.work.length);
+        return nd.order;
+    }
+
+    private boolean isDeadEnd(int v) { // At most one distinct neighbour
+        for (int k = adjFirst[v] + 1; k < adjFirst[v + 1]; k++) {
+            if (adj[k] != adj[adjFirst[v]]) return false;
+        }
+        return true;
+    }
+
+    // Orders the nodes work[lo .. hi-1].
+    private void dissect(int lo, int hi) {
+        int size = hi - lo;
+        if (size <= LEAF_SIZE) {
+            for (int k = lo; k < hi; k++) order[nextRank++] = work[k];
+            return;
+        }
+
+        // Cut at the median along the direction (horizontal, vertical or one of the diagonals) with the smallest boundary
+        long[] keys = new long[size];
+        int bestDirection = -1, bestBoundary = Integer.MAX_VALUE;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            sortAlong(direction, lo, hi, keys);
+            int boundary = boundary(lo, lo + size / 2, hi);
+            if (boundary < bestBoundary) {
+                bestBoundary = boundary;
+                bestDirection = direction;
+            }
+        }
+        if (bestDirection != DIRECTIONS - 1) sortAlong(bestDirection, lo, hi, keys);
+        int mid = lo + size / 2;
+
+        int labelA = ++label, labelB = ++label;
+        for (int k = lo; k < mid; k++) mark[work[k]] = labelA;
+        for (int k = mid; k < hi; k++) mark[work[k]] = labelB;
+
+        // Boundary of each side; the smaller one becomes the separator
+        int boundaryA = 0, boundaryB = 0;
+        for (int k = lo; k < mid; k++) if (touches(work[k], labelB)) boundaryA++;
+        for (int k = mid; k < hi; k++) if (touches(work[k], labelA)) boundaryB++;
+        boolean separatorInA = boundaryA <= boundaryB;
+        int sideLo = separatorInA ? lo : mid, sideHi = separatorInA ? mid : hi;
+        int other = separatorInA ? labelB : labelA;
+
+        // Move the separator nodes to the end of their side, keeping the coordinate order of the rest
+        int[] separator = new int[separatorInA ? boundaryA : boundaryB];
+        int s = 0, keep = sideLo;
+        for (int k = sideLo; k < sideHi; k++) {
+            int v = work[k];
+            if (touches(v, other)) separator[s++] = v; else work[keep++] = v;
+        }
+
+        if (separatorInA) {
+            dissect(lo, keep);
+            dissect(mid, hi);
+        } else {
+            dissect(lo, mid);
+            dissect(mid, keep);
+        }
+        for (int v : separator) order[nextRank++] = v;
+    }
+
+    // Sorts work[lo .. hi-1] by the node coordinates projected onto one of the cut directions.
+    private void sortAlong(int direction, int lo, int hi, long[] keys) {
+        for (int k = lo; k < hi; k++) {
+            int v = work[k];
+            long x = graph.nodeX(v), y = graph.nodeY(v);
+            long c = direction == 0 ? x : direction == 1 ? y : direction == 2 ? x + y : x - y;
+            keys[k - lo] = ((c + (1L << 31)) << 31) | v; // Projection first, node index breaks ties
+        }
+        Arrays.sort(keys, 0, hi - lo);
+        for (int k = lo; k < hi; k++) work[k] = (int) (keys[k - lo] & 0x7fffffffL);
+    }
+
+    // Size of the smaller boundary of the split work[lo .. mid-1] | work[mid .. hi-1].
+    private int boundary(int lo, int mid, int hi) {
+        int labelA = ++label, labelB = ++label;
+        for (int k = lo; k < mid; k++) mark[work[k]] = labelA;
+        for (int k = mid; k < hi; k++) mark[work[k]] = labelB;
+        int boundaryA = 0, boundaryB = 0;
+        for (int k = lo; k < mid; k++) if (touches(work[k], labelB)) boundaryA++;
+        for (int k = mid; k < hi; k++) if (touches(work[k], labelA)) boundaryB++;
+        return Math.min(boundaryA, boundaryB);
+    }
+
+    private boolean touches(int v, int otherLabel) {
+        for (int k = adjFirst[v]; k < adjFirst[v + 1]; k++) {
+            if (mark[adj[k]] == otherLabel) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,24 @@
+package routing;
+
+// Common contract for all path finding strategies. Works on dense node indices (see CityGraph.indexOf) so that callers
+// never need boxed collections on the hot path.
+public interface Router {
+
+    // Returns the node indices of the cheapest path from -> to (both inclusive), or null if the target is unreachable.
+    int[] route(int from, int to);
+
+    // Routes from one origin to several destinations: paths[i] is the route to targets[i], or null if it is unreachable.
+    // Routers that can answer them all from one search override this; the default asks route() for each target.
+    default int[][] routeMany(int from, int[] targets) {
+        int[][] paths = new int[targets.length][];
+        for (int i = 0; i < targets.length; i++) paths[i] = route(from, targets[i]);
+        return paths;
+    }
+
+    // Called by the engine at a fixed interval after road weights have changed. Routers that work from a snapshot of the
+    // weights (CchRouter) rebuild it here; the others read weights live and ignore it.
+    default void refreshWeights() {}
+
+    // Search counters of this router, or null if it does not search the graph itself.
+    default SearchStats getStats() { return null; }
+}
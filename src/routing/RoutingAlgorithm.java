@@ -0,0 +1,24 @@
+package routing;
+
+import models.CityGraph;
+
+// Path search strategies the engine can be configured with. All of them return shortest paths for the given weights,
+// except CCH: its queries use the weights snapshotted by the refresh before the last one, since a customization is only
+// published at the next refreshWeights() (see CchRouter). The goal-directed ones settle far fewer nodes per query on
+// large maps.
+public enum RoutingAlgorithm {
+    DIJKSTRA, // Plain Dijkstra, explores in all directions until the target is settled
+    ASTAR,    // A* with the straight-line distance as heuristic, no preprocessing
+    ALT,      // A* with landmark distances (see LandmarkHeuristic); one-off preprocessing of 2 searches per landmark
+    CCH;      // Customizable contraction hierarchy: microsecond queries on weights refreshed periodically (see CchRouter)
+
+    // Builds a router of this kind. The heuristics bound base weights, so 'weights' must never go below them.
+    public Router create(CityGraph graph, EdgeWeights weights) {
+        switch (this) {
+            case ASTAR: return new AStarRouter(graph, weights, new EuclideanHeuristic(graph));
+            case ALT: return new AStarRouter(graph, weights, new LandmarkHeuristic(graph, LandmarkHeuristic.DEFAULT_LANDMARKS));
+            case CCH: return new CchRouter(graph, weights);
+            default: return new DijkstraRouter(graph, weights);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package routing;
+
+import java.util.Arrays;
+
+// Reusable per-thread buffers for a single shortest-path search. Instead of clearing the arrays before every query, each
+// entry carries the generation stamp of the search that wrote it; entries with an older stamp read as "unvisited".
+public class SearchScratch {
+    final double[] dist;
+    final int[] pred;   // Predecessor node index on the best known path, -1 for the source
+    final int[] stamp;
+    final IndexedMinHeap heap;
+    private double[] potential; // Heuristic estimate per node (A* only, allocated on first use)
+    private boolean[] wanted;   // Targets of a one-to-many search (allocated on first use, all false between searches)
+    private int generation = 0;
+
+    public SearchScratch(int nodeCount) {
+        dist = new double[nodeCount];
+        pred = new int[nodeCount];
+        stamp = new int[nodeCount];
+        heap = new IndexedMinHeap(nodeCount);
+    }
+
+    public int capacity() { return dist.length; }
+
+    // Starts a new search: invalidates every entry written by earlier searches in O(1).
+    void begin() {
+        heap.clear();
+        if (++generation == Integer.MAX_VALUE) { // Stamps wrapped around; fall back to one real reset
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    // Per-node heuristic values; only meaningful for nodes reached in the current search.
+    double[] potentials() {
+        if (potential == null) potential = new double[dist.length];
+        return potential;
+    }
+
+    // Target flags for DijkstraRouter.routeMany; the search clears the flags it set before returning.
+    boolean[] targets() {
+        if (wanted == null) wanted = new boolean[dist.length];
+        return wanted;
+    }
+
+    boolean reached(int node) { return stamp[node] == generation; }
+    double distance(int node) { return stamp[node] == generation ? dist[node] : Double.POSITIVE_INFINITY; }
+
+    void set(int node, double distance, int predecessor) {
+        stamp[node] = generation;
+        dist[node] = distance;
+        pred[node] = predecessor;
+    }
+
+    // Walks the predecessor chain back from target and returns the path in forward order.
+    int[] buildPath(int target) {
+        int length = 0;
+        for (int n = target; n >= 0; n = pred[n]) length++;
+        int[] path = new int[length];
+        for (int n = target, i = length - 1; n >= 0; n = pred[n]) path[i--] = n;
+        return path;
+    }
+}
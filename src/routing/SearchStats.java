@@ -0,0 +1,32 @@
+package routing;
+
+import java.util.concurrent.atomic.LongAdder;
+import metrics.Histogram;
+
+// Counts queries and settled nodes (nodes taken off the heap) of a search router, to compare how much of the graph each
+// algorithm explores. Updated once per query, so concurrent searches only contend on the adders.
+public class SearchStats {
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+    private final Histogram settledPerQuery = new Histogram();
+
+    void record(int settledNodes) {
+        queries.increment();
+        settled.add(settledNodes);
+        settledPerQuery.record(settledNodes);
+    }
+
+    public long getQueries() { return queries.sum(); }
+    public long getSettledNodes() { return settled.sum(); }
+    public Histogram getSettledHistogram() { return settledPerQuery; } // Distribution of settled nodes per query
+
+    public double averageSettled() {
+        long q = getQueries();
+        return q == 0 ? 0 : getSettledNodes() / (double) q;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d queries, %.1f settled nodes per query", getQueries(), averageSettled());
+    }
+}
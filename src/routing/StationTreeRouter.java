@@ -0,0 +1,435 @@
+package routing;
+
+import java.util.Arrays;
+import models.CityGraph;
+import models.NodeType;
+
+// Router decorator that keeps two shortest-path trees per emergency base (police, hospital, fire station): one rooted at
+// the base (dispatch routes) and one towards it (return routes). A route that starts or ends at such a base is read off
+// the tree in O(path length); every other query goes to the delegate.
+// The trees are maintained incrementally instead of recomputed: the engine reports every road whose weight may have
+// changed (edgeChanged), each tree collects the roads whose weight did change, and applies them as one dynamic SSSP
+// update (after Ramalingam and Reps) just before it answers a lookup. For tree roads that got more expensive, the nodes
+// below them are visited in order of their old distance; a node that has another parent giving the same distance keeps
+// it and shields its subtree, the others are detached and re-attached through their cheapest remaining entry. Roads that
+// got cheaper seed a Dijkstra-ordered propagation from their far end. Only nodes whose distance actually changes are
+// re-settled, only the tree being asked is updated, and every answer is an exact shortest path for the current weights.
+// Each tree stores a distance and a tree edge per node, so trees are only kept for the first maxBases bases (taken in
+// turn from each service); routes of the other bases fall through to the delegate. Trees are built on first use.
+// Locking: the trees are guarded by this router, but only while a tree is updated and walked. Queries the trees do not
+// cover go to the delegate without the lock, so other searches run concurrently, and edgeChanged only takes the short
+// changeLock, so the engine thread never waits for a search.
+public class StationTreeRouter implements Router {
+    public static final long DEFAULT_NODE_BUDGET = 8_000_000L; // Tree entries (12 bytes each) across all trees
+    private static final NodeType[] SERVICES = { NodeType.POLICE, NodeType.HOSPITAL, NodeType.FIRE_STATION };
+
+    private final Router delegate;
+    private final CityGraph graph;
+    private final EdgeWeights weights;
+
+    private final int[] treeOf;         // Node index -> tree slot of that base, -1 if the node has no trees
+    private final Tree[] dispatch;      // Per slot: distances from the base
+    private final Tree[] returning;     // Per slot: distances to the base
+    private final int[] bases;          // Slot -> base node index
+    private final int[] edgeSources;    // Source node of every road (the CSR only stores targets)
+    private final double[] treeWeights; // Road weights the trees currently reflect
+
+    // Roads reported since the last lookup (guarded by changeLock)
+    private final Object changeLock = new Object();
+    private final boolean[] dirty;
+    private int[] dirtyList = new int[64];
+    private int dirtyCount = 0;
+    private int[] changes = new int[64]; // Taken-over dirtyList of the current lookup
+
+    // Shared update buffers (all access is synchronized on this router)
+    private final IndexedMinHeap heap;
+    private final int[] detached;       // Nodes detached by the current update, marked by stamp
+    private final int[] detachedStamp;
+    private int stamp = 0;
+
+    private long lookups = 0, updates = 0, resettled = 0;
+
+    public StationTreeRouter(Router delegate, CityGraph graph, EdgeWeights weights, int maxBases) {
+        this.delegate = delegate;
+        this.graph = graph;
+        this.weights = weights;
+        int n = graph.nodeCount(), m = graph.edgeCount();
+
+        // Round-robin over the services so a limited budget still covers each of them
+        int[][] stations = new int[SERVICES.length][];
+        for (int k = 0; k < SERVICES.length; k++) stations[k] = graph.nodesOfType(SERVICES[k]);
+        int[] chosen = new int[Math.max(0, maxBases)];
+        int count = 0;
+        for (int round = 0; count < chosen.length; round++) {
+            boolean any = false;
+            for (int[] list : stations) {
+                if (round < list.length && count < chosen.length) {
+                    chosen[count++] = list[round];
+                    any = true;
+                }
+            }
+            if (!any) break;
+        }
+        bases = Arrays.copyOf(chosen, count);
+        treeOf = new int[n];
+        Arrays.fill(treeOf, -1);
+        for (int slot = 0; slot < bases.length; slot++) treeOf[bases[slot]] = slot;
+        dispatch = new Tree[bases.length];
+        returning = new Tree[bases.length];
+
+        edgeSources = new int[m];
+        for (int i = 0; i < n; i++) Arrays.fill(edgeSources, graph.firstEdge(i), graph.endEdge(i), i);
+        treeWeights = new double[m];
+        for (int e = 0; e < m; e++) treeWeights[e] = weights.weight(e);
+        dirty = new boolean[m];
+
+        heap = new IndexedMinHeap(n);
+        detached = new int[n];
+        detachedStamp = new int[n];
+    }
+
+    // Number of bases that fit the default node budget on this map (at least one per service when possible).
+    public static int defaultBases(CityGraph graph) {
+        return (int) Math.max(SERVICES.length, DEFAULT_NODE_BUDGET / (2L * Math.max(1, graph.nodeCount())));
+    }
+
+    // Records that the weight of a road may have changed (a vehicle entered or left it). Cheap; the trees are brought up
+    // to date lazily before the next lookup.
+    public void edgeChanged(int edge) {
+        synchronized (changeLock) {
+            if (dirty[edge]) return;
+            dirty[edge] = true;
+            if (dirtyCount == dirtyList.length) dirtyList = Arrays.copyOf(dirtyList, dirtyCount * 2);
+            dirtyList[dirtyCount++] = edge;
+        }
+    }
+
+    // Drops every tree and takes the current weights as the new baseline, e.g. after the engine restored a checkpoint.
+    // The trees are rebuilt on their next lookup, exactly as in a router created for the restored state.
+    public synchronized void reset() {
+        Arrays.fill(dispatch, null);
+        Arrays.fill(returning, null);
+        synchronized (changeLock) {
+            for (int c = 0; c < dirtyCount; c++) dirty[dirtyList[c]] = false;
+            dirtyCount = 0;
+        }
+        for (int e = 0; e < treeWeights.length; e++) treeWeights[e] = weights.weight(e);
+    }
+
+    // Copy of the trees and of the changes they have not applied yet, for checkpoints. A router restored from it answers
+    // exactly as the original one: trees grown incrementally can break distance ties differently from freshly built ones.
+    public static final class Snapshot {
+        public final int[] bases;          // Slot -> base node index (the snapshot only fits a router with the same bases)
+        public final double[] treeWeights; // Per road
+        public final int[] dirty;          // Roads reported since the last lookup, in report order
+        public final double[][] dist;      // Per tree (2 * slot, +1 for the returning tree), null if not built yet
+        public final int[][] via;
+        public final int[][] pending;      // Changed roads the tree has not applied yet, in order
+
+        public Snapshot(int[] bases, double[] treeWeights, int[] dirty, double[][] dist, int[][] via, int[][] pending) {
+            this.bases = bases;
+            this.treeWeights = treeWeights;
+            this.dirty = dirty;
+            this.dist = dist;
+            this.via = via;
+            this.pending = pending;
+        }
+    }
+
+    public synchronized Snapshot snapshot() {
+        int trees = 2 * bases.length;
+        double[][] dist = new double[trees][];
+        int[][] via = new int[trees][];
+        int[][] pending = new int[trees][];
+        for (int t = 0; t < trees; t++) {
+            Tree tree = (t % 2 == 0 ? dispatch : returning)[t / 2];
+            if (tree == null) continue;
+            dist[t] = tree.dist.clone();
+            via[t] = tree.via.clone();
+            pending[t] = Arrays.copyOf(tree.pending, tree.pendingCount);
+        }
+        int[] reported;
+        synchronized (changeLock) {
+            reported = Arrays.copyOf(dirtyList, dirtyCount);
+        }
+        return new Snapshot(bases.clone(), treeWeights.clone(), reported, dist, via, pending);
+    }
+
+    // Takes over a snapshot of a router on the same map; falls back to reset() if it was taken with other bases.
+    public synchronized void restore(Snapshot snapshot) {
+        if (!Arrays.equals(snapshot.bases, bases) || snapshot.treeWeights.length != treeWeights.length) {
+            reset();
+            return;
+        }
+        for (int t = 0; t < 2 * bases.length; t++) {
+            Tree[] trees = (t % 2 == 0) ? dispatch : returning;
+            if (snapshot.dist[t] == null) {
+                trees[t / 2] = null;
+                continue;
+            }
+            Tree tree = new Tree(bases[t / 2], t % 2 == 1);
+            System.arraycopy(snapshot.dist[t], 0, tree.dist, 0, tree.dist.length);
+            System.arraycopy(snapshot.via[t], 0, tree.via, 0, tree.via.length);
+            for (int e : snapshot.pending[t]) tree.markPending(e);
+            trees[t / 2] = tree;
+        }
+        System.arraycopy(snapshot.treeWeights, 0, treeWeights, 0, treeWeights.length);
+        synchronized (changeLock) {
+            for (int c = 0; c < dirtyCount; c++) dirty[dirtyList[c]] = false;
+            dirtyCount = 0;
+        }
+        for (int e : snapshot.dirty) edgeChanged(e);
+    }
+
+    // treeOf and bases never change, so queries without a tree are told apart and delegated without taking the lock.
+    @Override
+    public int[] route(int from, int to) {
+        int slot = from != to ? treeOf[from] : -1;
+        boolean outbound = slot >= 0;
+        if (!outbound) slot = from != to ? treeOf[to] : -1;
+        if (slot < 0) return delegate.route(from, to);
+        return treeRoute(slot, outbound, from, to);
+    }
+
+    // Brings the tree of the slot up to date and reads the route off it.
+    private synchronized int[] treeRoute(int slot, boolean outbound, int from, int to) {
+        collectChanges();
+        lookups++;
+        Tree[] trees = outbound ? dispatch : returning;
+        if (trees[slot] == null) trees[slot] = build(bases[slot], !outbound);
+        Tree tree = trees[slot];
+        if (tree.pendingCount > 0) {
+            resettled += tree.update();
+            updates++;
+        }
+        return outbound ? tree.pathFromRoot(to) : tree.pathToRoot(from);
+    }
+
+    // Trips to a base with a returning tree are answered by the tree under one hold of the lock; the rest go to the
+    // delegate as one batch after the lock is released.
+    @Override
+    public int[][] routeMany(int from, int[] targets) {
+        int[][] paths = new int[targets.length][];
+        int[] others = new int[targets.length];
+        int count = 0;
+        synchronized (this) {
+            for (int i = 0; i < targets.length; i++) {
+                int to = targets[i];
+                int slot = from != to ? treeOf[from] : -1;
+                boolean outbound = slot >= 0;
+                if (!outbound) slot = from != to ? treeOf[to] : -1;
+                if (slot >= 0) {
+                    paths[i] = treeRoute(slot, outbound, from, to);
+                } else {
+                    others[count++] = i;
+                }
+            }
+        }
+        if (count == 0) return paths;
+
+        int[] otherTargets = new int[count];
+        for (int k = 0; k < count; k++) otherTargets[k] = targets[others[k]];
+        int[][] found = delegate.routeMany(from, otherTargets);
+        for (int k = 0; k < count; k++) paths[others[k]] = found[k];
+        return paths;
+    }
+
+    @Override
+    public SearchStats getStats() { return delegate.getStats(); }
+
+    @Override
+    public void refreshWeights() { delegate.refreshWeights(); }
+
+    public synchronized int getBaseCount() { return bases.length; }
+    public synchronized long getLookups() { return lookups; }
+    public synchronized long getUpdates() { return updates; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("station trees: %d bases, %d lookups, %d updates, %.1f nodes re-settled per update",
+                bases.length, lookups, updates, updates == 0 ? 0.0 : resettled / (double) updates);
+    }
+
+    // One shortest-path tree. Forward trees hold distances from the root and the road into each node; reverse trees hold
+    // distances to the root and the road out of each node (its next hop). "Down" roads lead away from the root in the
+    // tree's direction, "up" roads lead towards it.
+    private final class Tree {
+        final int root;
+        final boolean reverse;
+        final double[] dist;
+        final int[] via; // Tree road of each node, -1 for the root and unreachable nodes
+        final boolean[] isPending = new boolean[treeWeights.length]; // Roads changed since the last update
+        int[] pending = new int[64];
+        int pendingCount = 0;
+
+        Tree(int root, boolean reverse) {
+            this.root = root;
+            this.reverse = reverse;
+            dist = new double[graph.nodeCount()];
+            via = new int[graph.nodeCount()];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            Arrays.fill(via, -1);
+        }
+
+        int downFirst(int x) { return reverse ? graph.firstIncoming(x) : graph.firstEdge(x); }
+        int downEnd(int x) { return reverse ? graph.endIncoming(x) : graph.endEdge(x); }
+        int upFirst(int x) { return reverse ? graph.firstEdge(x) : graph.firstIncoming(x); }
+        int upEnd(int x) { return reverse ? graph.endEdge(x) : graph.endIncoming(x); }
+        int downEdge(int k) { return reverse ? graph.incomingEdge(k) : k; }
+        int upEdge(int k) { return reverse ? k : graph.incomingEdge(k); }
+        int rootSide(int e) { return reverse ? graph.edgeTarget(e) : edgeSources[e]; } // End of road e nearer the root
+        int leafSide(int e) { return reverse ? edgeSources[e] : graph.edgeTarget(e); }
+
+        void markPending(int e) {
+            if (isPending[e]) return;
+            isPending[e] = true;
+            if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+            pending[pendingCount++] = e;
+        }
+
+        void improve(int x, double d, int e) {
+            dist[x] = d;
+            via[x] = e;
+            heap.insertOrDecrease(x, d);
+        }
+
+        // Dijkstra from the queued nodes outwards; returns the number of nodes settled.
+        int propagate() {
+            int settled = 0;
+            while (!heap.isEmpty()) {
+                int x = heap.poll();
+                settled++;
+                double base = dist[x];
+                for (int k = downFirst(x), end = downEnd(x); k < end; k++) {
+                    int e = downEdge(k);
+                    int y = leafSide(e);
+                    double d = base + treeWeights[e];
+                    if (d < dist[y]) improve(y, d, e);
+                }
+            }
+            return settled;
+        }
+
+        // Applies the pending road changes (treeWeights hold the new values). A tree road p -> x always satisfies
+        // dist[x] == dist[p] + old weight, so comparing against the new weight tells whether it got more expensive.
+        // Returns the number of nodes re-settled.
+        int update() {
+            // Candidates: heads of tree roads that got more expensive, then the tree children of every detached node,
+            // visited by old distance so that a node's possible parents are decided before the node itself
+            stamp++;
+            for (int c = 0; c < pendingCount; c++) {
+                int e = pending[c];
+                int x = leafSide(e);
+                if (via[x] == e && dist[rootSide(e)] + treeWeights[e] > dist[x]) heap.insertOrDecrease(x, dist[x]);
+            }
+            int detachedCount = 0;
+            while (!heap.isEmpty()) {
+                int x = heap.poll();
+                if (keepsDistance(x)) continue;
+                detachedStamp[x] = stamp;
+                detached[detachedCount++] = x;
+                for (int k = downFirst(x), end = downEnd(x); k < end; k++) {
+                    int e = downEdge(k);
+                    int y = leafSide(e);
+                    if (via[y] == e) heap.insertOrDecrease(y, dist[y]);
+                }
+            }
+            for (int k = 0; k < detachedCount; k++) {
+                dist[detached[k]] = Double.POSITIVE_INFINITY;
+                via[detached[k]] = -1;
+            }
+
+            // Re-attach detached nodes through their cheapest road from an attached node
+            for (int k = 0; k < detachedCount; k++) {
+                int x = detached[k];
+                for (int j = upFirst(x), end = upEnd(x); j < end; j++) {
+                    int e = upEdge(j);
+                    int p = rootSide(e);
+                    if (detachedStamp[p] == stamp) continue;
+                    double d = dist[p] + treeWeights[e];
+                    if (d < dist[x]) improve(x, d, e);
+                }
+            }
+            // Roads that got cheaper may offer a shorter way to their far end
+            for (int c = 0; c < pendingCount; c++) {
+                int e = pending[c];
+                isPending[e] = false;
+                int x = leafSide(e);
+                double d = dist[rootSide(e)] + treeWeights[e];
+                if (d < dist[x]) improve(x, d, e);
+            }
+            pendingCount = 0;
+            return propagate();
+        }
+
+        // True if x can keep its distance through a road from a node that is not detached; x is then re-parented to it.
+        private boolean keepsDistance(int x) {
+            for (int j = upFirst(x), end = upEnd(x); j < end; j++) {
+                int e = upEdge(j);
+                int p = rootSide(e);
+                // Zero-weight roads are skipped: their tail could be a candidate that is not decided yet
+                if (treeWeights[e] > 0 && detachedStamp[p] != stamp && dist[p] + treeWeights[e] == dist[x]) {
+                    via[x] = e;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Nodes from the root to 'to' (inclusive), or null if unreachable.
+        int[] pathFromRoot(int to) {
+            if (dist[to] == Double.POSITIVE_INFINITY) return null;
+            int length = 1;
+            for (int x = to; x != root; x = rootSide(via[x])) length++;
+            int[] path = new int[length];
+            for (int x = to, i = length - 1; i >= 0; i--) {
+                path[i] = x;
+                if (i > 0) x = rootSide(via[x]);
+            }
+            return path;
+        }
+
+        // Nodes from 'from' to the root (inclusive), or null if unreachable.
+        int[] pathToRoot(int from) {
+            if (dist[from] == Double.POSITIVE_INFINITY) return null;
+            int length = 1;
+            for (int x = from; x != root; x = rootSide(via[x])) length++;
+            int[] path = new int[length];
+            for (int x = from, i = 0; i < length; i++) {
+                path[i] = x;
+                if (i + 1 < length) x = rootSide(via[x]);
+            }
+            return path;
+        }
+    }
+
+    private Tree build(int root, boolean reverse) {
+        Tree tree = new Tree(root, reverse);
+        tree.improve(root, 0.0, -1);
+        tree.propagate();
+        return tree;
+    }
+
+    // Updates the tree weights of the roads reported since the last lookup and hands those that really changed to
+    // every built tree.
+    private void collectChanges() {
+        int count;
+        synchronized (changeLock) {
+            count = dirtyCount;
+            if (changes.length < count) changes = new int[dirtyList.length];
+            for (int k = 0; k < count; k++) {
+                changes[k] = dirtyList[k];
+                dirty[changes[k]] = false; // Reported again if it changes after this point
+            }
+            dirtyCount = 0;
+        }
+        for (int k = 0; k < count; k++) {
+            int e = changes[k];
+            double w = weights.weight(e);
+            if (w == treeWeights[e]) continue; // Entered and left again since the last lookup
+            treeWeights[e] = w;
+            for (Tree tree : dispatch) if (tree != null) tree.markPending(e);
+            for (Tree tree : returning) if (tree != null) tree.markPending(e);
+        }
+    }
+}
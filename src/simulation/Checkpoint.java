@@ -0,0 +1,365 @@
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import models.CityGraph;
+import routing.StationTreeRouter;
+
+// The complete state of a simulation between two ticks: every vehicle slot (position, leg, queue entry stamp, route),
+// the slot free list, the light phases and timers, the engine counters, the pending bus waves and the background generator
+// or OD demand sampler (its position and random state; the demand file itself is not stored, see DemandSampler.resume).
+// Road queues and light approach counts are not stored; restoring re-queues the vehicles in entry-stamp order, which gives
+// the same queues. The route cache is stored with its LRU order and the station trees with their distances, tree roads and
+// unapplied changes (rebuilt trees could break distance ties differently); the CCH metric is rebuilt.
+//
+// SimulationEngine.checkpoint fills one with plain array copies on the engine thread (copy-on-snapshot; routes are shared,
+// they are never modified) and writes it on a background thread, so the tick loop only pauses for the copies.
+// An event-driven engine also stores its lazy state (leg and due ticks, pending events, light sync ticks), so it resumes
+// exactly; restoring into an engine of the other mode converts the state as setEventDriven does.
+public final class Checkpoint {
+    static final int MAGIC = 0x53544331; // "STC1"
+    static final int VERSION = 3; // 2 added the demand sampler, 3 the station trees; older files are still read
+
+    // Map the checkpoint belongs to
+    int nodeCount, edgeCount;
+
+    // Engine counters
+    long tickCount;
+    long entrySequence;
+    int carIdCounter;
+    int trafficLoopCount;
+
+    // Vehicle slots 0 .. highWater-1; ids[s] == null marks a free slot
+    int highWater;
+    int[] freeSlots;
+    String[] ids;
+    byte[] type;
+    int[] current, next, destination, pathIndex, edge;
+    double[] progress, step;
+    long[] entryTime;
+    boolean[] returning;
+    int[][] path;
+
+    // Per intersection k (see CityGraph.intersection)
+    boolean[] northSouthGreen;
+    int[] timer;
+
+    // Event-driven engine state (progress and timer above are then as stored, not extrapolated)
+    boolean eventDriven;
+    long lightClock;
+    long[] legTick, dueTick, pending; // Per slot
+    long[] lightSynced, lightDue;     // Per intersection k
+
+    // Route cache entries, least recently used first (null without a cache)
+    int[][] cachedRoutes;
+    double[] cachedCosts;
+
+    // Station trees (null without them)
+    StationTreeRouter.Snapshot stationTrees;
+
+    // Pending scheduler work, as ticks remaining after tickCount
+    long[] busWaveDelay;
+    int[] busWaveGroup;
+    long generatorDelay = -1;       // -1 when the background generator is not running
+    byte[] generatorRandom;         // Serialized java.util.Random of the generator
+    long demandTick = -1;           // Ticks the demand sampler had drawn, -1 when no demand file was running
+    byte[] demandRandom;            // Serialized java.util.Random of the demand sampler
+
+    Checkpoint() {}
+
+    public long getTick() { return tickCount; }
+
+    // True if the checkpoint was taken while an OD demand file was driving the run.
+    public boolean hasDemand() { return demandTick >= 0; }
+
+    public int getVehicleCount() {
+        int n = 0;
+        for (int s = 0; s < highWater; s++) if (ids[s] != null) n++;
+        return n;
+    }
+
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt(edgeCount);
+            out.writeLong(tickCount);
+            out.writeLong(entrySequence);
+            out.writeInt(carIdCounter);
+            out.writeInt(trafficLoopCount);
+            out.writeBoolean(eventDriven);
+            out.writeLong(lightClock);
+
+            // Routes are shared by many vehicles (route cache, bus loops), so each distinct one is written once
+            Map<int[], Integer> routes = new IdentityHashMap<>();
+            for (int s = 0; s < highWater; s++) {
+                if (ids[s] != null) routes.putIfAbsent(path[s], routes.size());
+            }
+            if (cachedRoutes != null) {
+                for (int[] route : cachedRoutes) routes.putIfAbsent(route, routes.size());
+            }
+            out.writeInt(routes.size());
+            int[][] byIndex = new int[routes.size()][];
+            for (Map.Entry<int[], Integer> e : routes.entrySet()) byIndex[e.getValue()] = e.getKey();
+            for (int[] route : byIndex) {
+                out.writeInt(route.length);
+                for (int node : route) out.writeInt(node);
+            }
+
+            out.writeInt(highWater);
+            out.writeInt(freeSlots.length);
+            for (int s : freeSlots) out.writeInt(s);
+            for (int s = 0; s < highWater; s++) {
+                out.writeBoolean(ids[s] != null);
+                if (ids[s] == null) continue;
+                out.writeUTF(ids[s]);
+                out.writeByte(type[s]);
+                out.writeInt(routes.get(path[s]));
+                out.writeInt(pathIndex[s]);
+                out.writeInt(current[s]);
+                out.writeInt(next[s]);
+                out.writeInt(destination[s]);
+                out.writeInt(edge[s]);
+                out.writeLong(entryTime[s]);
+                out.writeDouble(progress[s]);
+                out.writeDouble(step[s]);
+                out.writeBoolean(returning[s]);
+                if (eventDriven) {
+                    out.writeLong(legTick[s]);
+                    out.writeLong(dueTick[s]);
+                    out.writeLong(pending[s]);
+                }
+            }
+
+            out.writeInt(timer.length);
+            for (int k = 0; k < timer.length; k++) {
+                out.writeBoolean(northSouthGreen[k]);
+                out.writeInt(timer[k]);
+                if (eventDriven) {
+                    out.writeLong(lightSynced[k]);
+                    out.writeLong(lightDue[k]);
+                }
+            }
+
+            out.writeInt(busWaveDelay.length);
+            for (int i = 0; i < busWaveDelay.length; i++) {
+                out.writeLong(busWaveDelay[i]);
+                out.writeInt(busWaveGroup[i]);
+            }
+            out.writeLong(generatorDelay);
+            if (generatorDelay >= 0) {
+                out.writeInt(generatorRandom.length);
+                out.write(generatorRandom);
+            }
+            out.writeLong(demandTick);
+            if (demandTick >= 0) {
+                out.writeInt(demandRandom.length);
+                out.write(demandRandom);
+            }
+
+            out.writeInt(cachedRoutes != null ? cachedRoutes.length : -1);
+            if (cachedRoutes != null) {
+                for (int i = 0; i < cachedRoutes.length; i++) {
+                    out.writeInt(routes.get(cachedRoutes[i]));
+                    out.writeDouble(cachedCosts[i]);
+                }
+            }
+
+            out.writeBoolean(stationTrees != null);
+            if (stationTrees != null) writeTrees(out, stationTrees);
+        }
+    }
+
+    // Reads a checkpoint and checks that it was taken on a map of the same size as the given one.
+    public static Checkpoint read(Path file, CityGraph graph) throws IOException {
+        Checkpoint c = new Checkpoint();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a checkpoint: " + file);
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            c.nodeCount = in.readInt();
+            c.edgeCount = in.readInt();
+            if (c.nodeCount != graph.nodeCount() || c.edgeCount != graph.edgeCount()) {
+                throw new IOException(file + ": taken on a map with " + c.nodeCount + " nodes and " + c.edgeCount + " edges");
+            }
+            c.tickCount = in.readLong();
+            c.entrySequence = in.readLong();
+            c.carIdCounter = in.readInt();
+            c.trafficLoopCount = in.readInt();
+            c.eventDriven = in.readBoolean();
+            c.lightClock = in.readLong();
+
+            int[][] routes = new int[in.readInt()][];
+            for (int r = 0; r < routes.length; r++) {
+                routes[r] = new int[in.readInt()];
+                for (int i = 0; i < routes[r].length; i++) routes[r][i] = in.readInt();
+            }
+
+            int n = c.highWater = in.readInt();
+            c.freeSlots = new int[in.readInt()];
+            for (int i = 0; i < c.freeSlots.length; i++) c.freeSlots[i] = in.readInt();
+            c.allocateSlots(n);
+            for (int s = 0; s < n; s++) {
+                if (!in.readBoolean()) continue;
+                c.ids[s] = in.readUTF();
+                c.type[s] = in.readByte();
+                c.path[s] = routes[in.readInt()];
+                c.pathIndex[s] = in.readInt();
+                c.current[s] = in.readInt();
+                c.next[s] = in.readInt();
+                c.destination[s] = in.readInt();
+                c.edge[s] = in.readInt();
+                c.entryTime[s] = in.readLong();
+                c.progress[s] = in.readDouble();
+                c.step[s] = in.readDouble();
+                c.returning[s] = in.readBoolean();
+                if (c.eventDriven) {
+                    c.legTick[s] = in.readLong();
+                    c.dueTick[s] = in.readLong();
+                    c.pending[s] = in.readLong();
+                }
+            }
+
+            int lights = in.readInt();
+            c.northSouthGreen = new boolean[lights];
+            c.timer = new int[lights];
+            c.lightSynced = new long[lights];
+            c.lightDue = new long[lights];
+            for (int k = 0; k < lights; k++) {
+                c.northSouthGreen[k] = in.readBoolean();
+                c.timer[k] = in.readInt();
+                if (c.eventDriven) {
+                    c.lightSynced[k] = in.readLong();
+                    c.lightDue[k] = in.readLong();
+                }
+            }
+
+            int waves = in.readInt();
+            c.busWaveDelay = new long[waves];
+            c.busWaveGroup = new int[waves];
+            for (int i = 0; i < waves; i++) {
+                c.busWaveDelay[i] = in.readLong();
+                c.busWaveGroup[i] = in.readInt();
+            }
+            c.generatorDelay = in.readLong();
+            if (c.generatorDelay >= 0) {
+                c.generatorRandom = new byte[in.readInt()];
+                in.readFully(c.generatorRandom);
+            }
+            c.demandTick = (version >= 2) ? in.readLong() : -1;
+            if (c.demandTick >= 0) {
+                c.demandRandom = new byte[in.readInt()];
+                in.readFully(c.demandRandom);
+            }
+
+            int cached = in.readInt();
+            if (cached >= 0) {
+                c.cachedRoutes = new int[cached][];
+                c.cachedCosts = new double[cached];
+                for (int i = 0; i < cached; i++) {
+                    c.cachedRoutes[i] = routes[in.readInt()];
+                    c.cachedCosts[i] = in.readDouble();
+                }
+            }
+            if (version >= 3 && in.readBoolean()) c.stationTrees = readTrees(in);
+        }
+        return c;
+    }
+
+    private static void writeTrees(DataOutputStream out, StationTreeRouter.Snapshot trees) throws IOException {
+        writeInts(out, trees.bases);
+        out.writeInt(trees.treeWeights.length);
+        for (double w : trees.treeWeights) out.writeDouble(w);
+        writeInts(out, trees.dirty);
+        for (int t = 0; t < trees.dist.length; t++) {
+            out.writeBoolean(trees.dist[t] != null);
+            if (trees.dist[t] == null) continue;
+            out.writeInt(trees.dist[t].length);
+            for (double d : trees.dist[t]) out.writeDouble(d);
+            writeInts(out, trees.via[t]);
+            writeInts(out, trees.pending[t]);
+        }
+    }
+
+    private static StationTreeRouter.Snapshot readTrees(DataInputStream in) throws IOException {
+        int[] bases = readInts(in);
+        double[] treeWeights = new double[in.readInt()];
+        for (int e = 0; e < treeWeights.length; e++) treeWeights[e] = in.readDouble();
+        int[] dirty = readInts(in);
+        double[][] dist = new double[2 * bases.length][];
+        int[][] via = new int[dist.length][];
+        int[][] pending = new int[dist.length][];
+        for (int t = 0; t < dist.length; t++) {
+            if (!in.readBoolean()) continue;
+            dist[t] = new double[in.readInt()];
+            for (int x = 0; x < dist[t].length; x++) dist[t][x] = in.readDouble();
+            via[t] = readInts(in);
+            pending[t] = readInts(in);
+        }
+        return new StationTreeRouter.Snapshot(bases, treeWeights, dirty, dist, via, pending);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) out.writeInt(v);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+        return values;
+    }
+
+    // The generator and sampler keep their java.util.Random, so a restored run draws the same numbers as the original one.
+    static byte[] saveRandom(Random random) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(random);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In-memory stream
+        }
+    }
+
+    static Random loadRandom(byte[] state) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))) {
+            return (Random) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Corrupt random generator state in checkpoint", e);
+        }
+    }
+
+    void allocateSlots(int n) {
+        ids = new String[n];
+        type = new byte[n];
+        current = new int[n];
+        next = new int[n];
+        destination = new int[n];
+        pathIndex = new int[n];
+        edge = new int[n];
+        progress = new double[n];
+        step = new double[n];
+        entryTime = new long[n];
+        returning = new boolean[n];
+        path = new int[n][];
+        legTick = new long[n];
+        dueTick = new long[n];
+        pending = new long[n];
+    }
+}
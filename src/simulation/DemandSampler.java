@@ -0,0 +1,118 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import models.CityGraph;
+import models.DemandFile;
+
+// Turns streamed origin-destination demand into trips, one tick at a time. Every OD entry of a slice is a Poisson process
+// with the entry's rate. Their sum is sampled as a single Poisson count per tick for the slice's total rate, and each trip
+// then picks its entry in proportion to the entry rates (binary search over the cumulative rates), so a tick costs
+// O(trips * log entries) however large the OD matrix is. The next slice is read when simulated time reaches the end of the
+// current one, so only one slice is ever held in memory.
+public class DemandSampler {
+    private static final double KNUTH_MEAN = 30; // Larger means are drawn as sums of Poisson(30) draws
+
+    private final CityGraph graph;
+    private final DemandFile.Reader reader;
+    private Random random;
+
+    private DemandFile.Slice slice;
+    private double[] cumulative = new double[0]; // Trips per tick of entries 0..i of the current slice
+    private double perTick = 0;                  // Trips per tick of the whole slice
+    private long tick = 0;                       // Ticks sampled so far; tick k covers simulated seconds [k, k+1) / 20
+    private boolean finished = false;
+    private long trips = 0;
+    private long slices = 0;
+
+    public DemandSampler(CityGraph graph, DemandFile.Reader reader, Random random) {
+        this.graph = graph;
+        this.reader = reader;
+        this.random = random;
+    }
+
+    public long getTrips() { return trips; }
+    public long getSlices() { return slices; }
+    public boolean isFinished() { return finished; }
+    long getTick() { return tick; }
+    Random getRandom() { return random; }
+
+    // Continues the demand at the given tick (e.g. the tick of a checkpoint taken without demand); earlier slices are read
+    // and skipped. The trips are drawn with this sampler's own Random from there on.
+    public void startAt(long tick) {
+        this.tick = tick;
+    }
+
+    // Continues the demand exactly where it was when the checkpoint was taken: same tick and the same random state, so
+    // the restored run draws the trips the original run would have. Call with a sampler on the same demand file.
+    public void resume(Checkpoint checkpoint) {
+        if (!checkpoint.hasDemand()) throw new IllegalArgumentException("Checkpoint was taken without a demand file");
+        tick = checkpoint.demandTick;
+        random = Checkpoint.loadRandom(checkpoint.demandRandom);
+    }
+
+    // The trips that start in the next tick (empty between slices and after the last one).
+    public List<TripRequest> sample() throws IOException {
+        double now = tick++ / (double) SimulationEngine.TICKS_PER_SECOND;
+        while (!finished && (slice == null || now >= slice.end)) load();
+        if (finished || now < slice.start || perTick <= 0) return Collections.emptyList();
+
+        int n = poisson(perTick);
+        List<TripRequest> batch = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            int i = pick(random.nextDouble() * perTick);
+            batch.add(new TripRequest(graph.node(slice.origin[i]), graph.node(slice.destination[i]), slice.type[i]));
+        }
+        trips += n;
+        return batch;
+    }
+
+    private void load() throws IOException {
+        slice = reader.next();
+        if (slice == null) {
+            finished = true;
+            reader.close();
+            return;
+        }
+        slices++;
+        if (cumulative.length < slice.count) cumulative = new double[slice.count];
+        double sum = 0;
+        for (int i = 0; i < slice.count; i++) {
+            sum += slice.tripsPerHour[i] / (3600.0 * SimulationEngine.TICKS_PER_SECOND);
+            cumulative[i] = sum;
+        }
+        perTick = sum;
+    }
+
+    // First entry whose cumulative rate exceeds u (entries with rate 0 are never picked).
+    private int pick(double u) {
+        int lo = 0, hi = slice.count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] > u) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // Knuth's multiplication method; exp(-mean) would underflow for large means, so those are split into chunks.
+    private int poisson(double mean) {
+        int n = 0;
+        for (; mean > KNUTH_MEAN; mean -= KNUTH_MEAN) n += knuth(KNUTH_MEAN);
+        return n + knuth(mean);
+    }
+
+    private int knuth(double mean) {
+        double limit = Math.exp(-mean);
+        double p = random.nextDouble();
+        int k = 0;
+        while (p > limit) {
+            k++;
+            p *= random.nextDouble();
+        }
+        return k;
+    }
+}
@@ -0,0 +1,63 @@
+package simulation;
+
+import java.util.Arrays;
+
+// Future event list of the event-driven engine: a binary min-heap of packed long keys. Each key holds the tick the event
+// is due, its kind and the vehicle slot or node index it concerns, so polling returns events in (tick, kind, subject)
+// order. Vehicles of the same tick therefore come out in slot order (like the commit phase of the fixed tick), and light
+// switches come after all vehicles of their tick. Events are never removed early; the engine drops stale ones on poll.
+class EventCalendar {
+    static final int VEHICLE = 0;
+    static final int LIGHT = 1;
+
+    private static final int SUBJECT_BITS = 32;
+    private static final int KIND_BITS = 1;
+    private static final long SUBJECT_MASK = (1L << SUBJECT_BITS) - 1;
+
+    private long[] heap = new long[64];
+    private int size = 0;
+
+    boolean isEmpty() { return size == 0; }
+    int size() { return size; }
+
+    static long tickOf(long event) { return event >>> (SUBJECT_BITS + KIND_BITS); }
+    static int kindOf(long event) { return (int) (event >>> SUBJECT_BITS) & 1; }
+    static int subjectOf(long event) { return (int) (event & SUBJECT_MASK); }
+
+    void schedule(long tick, int kind, int subject) {
+        if (size == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+        long event = (tick << (SUBJECT_BITS + KIND_BITS)) | ((long) kind << SUBJECT_BITS) | (subject & SUBJECT_MASK);
+
+        int slot = size++;
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (heap[parent] <= event) break;
+            heap[slot] = heap[parent];
+            slot = parent;
+        }
+        heap[slot] = event;
+    }
+
+    // The earliest event, without removing it. Only valid when the calendar is not empty.
+    long peek() { return heap[0]; }
+
+    long poll() {
+        long top = heap[0];
+        long last = heap[--size];
+        int slot = 0;
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= last) break;
+            heap[slot] = heap[child];
+            slot = child;
+        }
+        if (size > 0) heap[slot] = last;
+        return top;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
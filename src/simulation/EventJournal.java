@@ -0,0 +1,202 @@
+package simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import models.CityGraph;
+import models.VehicleType;
+
+// Compact append-only binary log of everything that enters a simulation run from outside the tick logic: vehicles
+// joining (generated, bus waves, user dispatches, with their routes), the initial scattering along the routes and
+// resets, plus every light switch as a consistency check. Together with the map it is enough to replay a run tick
+// for tick (see JournalReplay).
+//
+// Layout: header (magic, version, seed, node and edge count of the map), then records of
+// kind byte + tick delta (varint) + payload. Integers are unsigned LEB128 varints; route nodes are zigzag deltas.
+// Ticks are those of SimulationEngine: spawns, placements and resets apply before the moves of their tick, light
+// switches happen at its end. An END record carries the last tick of the run.
+public final class EventJournal {
+    static final int MAGIC = 0x53544A31; // "STJ1"
+    static final int VERSION = 1;
+
+    static final byte SPAWN = 1;
+    static final byte PLACE = 2;
+    static final byte RESET = 3;
+    static final byte LIGHT = 4;
+    static final byte END = 5;
+
+    static final int FLAG_DISPATCH = 1; // Routed on another thread (user dispatch), so the recorded route is authoritative
+    static final int FLAG_FIXED_ROUTE = 2; // Bus loop; never re-routed on replay
+
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private EventJournal() {}
+
+    // Appends records to a journal file. Synchronized, so a shutdown hook may close it while the engine still runs.
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long lastTick = 0;
+        private long records = 0;
+        private boolean closed = false;
+
+        public Writer(Path file, CityGraph graph, long seed) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(graph.nodeCount());
+            out.writeInt(graph.edgeCount());
+        }
+
+        public synchronized long records() { return records; }
+
+        synchronized void spawn(long tick, String id, VehicleType type, int flags, int destination, int[] route) throws IOException {
+            if (!begin(SPAWN, tick)) return;
+            out.writeByte(type.ordinal());
+            out.writeByte(flags);
+            out.writeUTF(id);
+            writeVarint(destination);
+            writeVarint(route.length);
+            int previous = 0;
+            for (int node : route) {
+                int delta = node - previous;
+                writeVarint(((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+                previous = node;
+            }
+        }
+
+        synchronized void place(long tick, int slot, int pathIndex, double progress) throws IOException {
+            if (!begin(PLACE, tick)) return;
+            writeVarint(slot);
+            writeVarint(pathIndex);
+            out.writeDouble(progress);
+        }
+
+        synchronized void reset(long tick) throws IOException {
+            begin(RESET, tick);
+        }
+
+        synchronized void lightSwitch(long tick, int node) throws IOException {
+            if (!begin(LIGHT, tick)) return;
+            writeVarint(node);
+        }
+
+        // Writes the END record for the given last tick and closes the file. Later records are ignored.
+        public synchronized void close(long lastTickOfRun) throws IOException {
+            if (closed) return;
+            begin(END, Math.max(lastTick, lastTickOfRun));
+            closed = true;
+            out.close();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            close(lastTick);
+        }
+
+        private boolean begin(byte kind, long tick) throws IOException {
+            if (closed) return false;
+            out.writeByte(kind);
+            writeVarint(tick - lastTick);
+            lastTick = tick;
+            records++;
+            return true;
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    // Streams the records of a journal file one at a time; the current record is exposed through the public fields.
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        public final long seed;
+        public final int nodeCount, edgeCount;
+
+        // Current record (valid after next() returned true)
+        public byte kind;
+        public long tick;
+        public VehicleType type;
+        public int flags;
+        public String id;
+        public int destination;
+        public int[] route;
+        public int slot, pathIndex, node;
+        public double progress;
+
+        public Reader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC) throw new IOException("Not an event journal: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported journal version " + version + ": " + file);
+            seed = in.readLong();
+            nodeCount = in.readInt();
+            edgeCount = in.readInt();
+        }
+
+        // Loads the next record; false at the end of the file (a journal cut short by a crash simply ends there).
+        public boolean next() throws IOException {
+            int k = in.read();
+            if (k < 0) return false;
+            try {
+                kind = (byte) k;
+                tick += readVarint();
+                switch (kind) {
+                    case SPAWN:
+                        type = TYPES[in.readUnsignedByte()];
+                        flags = in.readUnsignedByte();
+                        id = in.readUTF();
+                        destination = (int) readVarint();
+                        route = new int[(int) readVarint()];
+                        int previous = 0;
+                        for (int i = 0; i < route.length; i++) {
+                            int zigzag = (int) readVarint();
+                            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                            route[i] = previous;
+                        }
+                        break;
+                    case PLACE:
+                        slot = (int) readVarint();
+                        pathIndex = (int) readVarint();
+                        progress = in.readDouble();
+                        break;
+                    case LIGHT:
+                        node = (int) readVarint();
+                        break;
+                    case RESET: case END:
+                        break;
+                    default:
+                        throw new IOException("Corrupt journal: unknown record kind " + kind);
+                }
+                return true;
+            } catch (EOFException e) {
+                return false; // Truncated last record
+            }
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
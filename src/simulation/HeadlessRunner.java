@@ -0,0 +1,215 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import metrics.MetricsCsvWriter;
+import models.CityGenerator;
+import models.CityGraph;
+import models.DemandFile;
+import models.MapFile;
+import models.TimingPlan;
+import routing.RoutingAlgorithm;
+
+// Runs the simulation without any GUI as fast as the CPU allows. Steps the same tick logic as the Swing loop and reports throughput at the end.
+public class HeadlessRunner {
+
+    private static final String USAGE = "Usage: HeadlessRunner [--ticks N | --duration SECONDS] [--seed S]\n"
+            + "                      [--map FILE | --generate grid|radial|random:INTERSECTIONS]\n"
+            + "                      [--router dijkstra|astar|alt|cch] [--route-refresh SECONDS]\n"
+            + "                      [--route-cache ENTRIES] [--route-tolerance FRACTION] [--station-trees BASES]\n"
+            + "                      [--threads N | --event-driven]\n"
+            + "                      [--metrics-csv FILE] [--metrics-interval SECONDS] [--jmx]\n"
+            + "                      [--record JOURNAL | --replay JOURNAL [--reroute]] [--demand FILE]\n"
+            + "                      [--restore CHECKPOINT] [--checkpoint FILE [--checkpoint-at SECONDS]]\n"
+            + "                      [--timing-plan FILE]";
+
+    public static void main(String[] args) throws IOException {
+        long ticks = 20L * 60 * SimulationEngine.TICKS_PER_SECOND; // Default: 20 simulated minutes
+        Long seed = null;
+        int routeCacheSize = SimulationEngine.DEFAULT_ROUTE_CACHE_SIZE;
+        double routeTolerance = SimulationEngine.DEFAULT_ROUTE_TOLERANCE;
+        int threads = 1;
+        boolean eventDriven = false;
+        String metricsCsv = null;
+        double metricsInterval = 10;
+        boolean jmx = false;
+        String mapFile = null;
+        String generate = null;
+        RoutingAlgorithm routing = RoutingAlgorithm.DIJKSTRA;
+        int routeRefresh = SimulationEngine.DEFAULT_ROUTE_REFRESH_SECONDS;
+        Integer stationTrees = null;
+        String recordFile = null;
+        String replayFile = null;
+        boolean reroute = false;
+        String demandFile = null;
+        String restoreFile = null;
+        String checkpointFile = null;
+        Double checkpointAt = null;
+        String timingPlanFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--ticks": ticks = Long.parseLong(args[++i]); break;
+                case "--duration": ticks = (long) (Double.parseDouble(args[++i]) * SimulationEngine.TICKS_PER_SECOND); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--route-cache": routeCacheSize = Integer.parseInt(args[++i]); break;
+                case "--route-tolerance": routeTolerance = Double.parseDouble(args[++i]); break;
+                case "--router": routing = RoutingAlgorithm.valueOf(args[++i].toUpperCase()); break;
+                case "--route-refresh": routeRefresh = Integer.parseInt(args[++i]); break;
+                case "--station-trees": stationTrees = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--event-driven": eventDriven = true; break;
+                case "--metrics-csv": metricsCsv = args[++i]; break;
+                case "--metrics-interval": metricsInterval = Double.parseDouble(args[++i]); break;
+                case "--jmx": jmx = true; break;
+                case "--map": mapFile = args[++i]; break;
+                case "--generate": generate = args[++i]; break;
+                case "--record": recordFile = args[++i]; break;
+                case "--replay": replayFile = args[++i]; break;
+                case "--reroute": reroute = true; break;
+                case "--demand": demandFile = args[++i]; break;
+                case "--restore": restoreFile = args[++i]; break;
+                case "--checkpoint": checkpointFile = args[++i]; break;
+                case "--checkpoint-at": checkpointAt = Double.parseDouble(args[++i]); break;
+                case "--timing-plan": timingPlanFile = args[++i]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println(USAGE);
+                    System.exit(2);
+            }
+        }
+
+        if (replayFile != null && (recordFile != null || demandFile != null)) {
+            System.err.println("--replay cannot be combined with --record or --demand");
+            System.exit(2);
+        }
+        if (restoreFile != null && (recordFile != null || replayFile != null)) {
+            System.err.println("--restore cannot be combined with --record or --replay");
+            System.exit(2);
+        }
+        // A replay runs on the recorded seed (which also picks the generated map) unless one is given
+        EventJournal.Reader replay = (replayFile != null) ? new EventJournal.Reader(Paths.get(replayFile)) : null;
+        if (replay != null && seed == null) seed = replay.seed;
+
+        CityGraph graph;
+        long loadStart = System.nanoTime();
+        if (mapFile != null) {
+            graph = MapFile.load(Paths.get(mapFile));
+        } else if (generate != null) {
+            String[] spec = generate.split(":");
+            CityGenerator.Layout layout = CityGenerator.Layout.valueOf(spec[0].toUpperCase());
+            graph = new CityGenerator(seed != null ? seed : 1L).generate(layout, Integer.parseInt(spec[1]));
+        } else {
+            graph = new CityGraph();
+        }
+        System.out.printf("Map: %d nodes, %d edges (ready in %.3f s)%n", graph.nodeCount(), graph.edgeCount(),
+                (System.nanoTime() - loadStart) / 1e9);
+        if (replay != null && (replay.nodeCount != graph.nodeCount() || replay.edgeCount != graph.edgeCount())) {
+            System.err.printf("Journal was recorded on a map with %d nodes and %d edges%n", replay.nodeCount, replay.edgeCount);
+            System.exit(2);
+        }
+
+        SimulationEngine engine = new SimulationEngine(graph);
+        long routingStart = System.nanoTime();
+        engine.configureRouting(routing);
+        engine.setRouteRefreshInterval(routeRefresh);
+        if (stationTrees != null) engine.configureStationTrees(stationTrees);
+        engine.configureRouteCache(routeCacheSize, routeTolerance);
+        if (routing != RoutingAlgorithm.DIJKSTRA) {
+            System.out.printf("Router: %s (prepared in %.3f s)%n", routing, (System.nanoTime() - routingStart) / 1e9);
+        }
+        engine.setParallelism(threads);
+        engine.setEventDriven(eventDriven);
+        if (jmx) engine.getMetrics().registerMBean("headless");
+        MetricsCsvWriter csv = (metricsCsv != null)
+                ? new MetricsCsvWriter(engine.getMetrics(), Paths.get(metricsCsv), (long) (metricsInterval * 1000)) : null;
+        long runSeed = (seed != null) ? seed : new Random().nextLong();
+        EventJournal.Writer journal = (recordFile != null)
+                ? new EventJournal.Writer(Paths.get(recordFile), graph, runSeed) : null;
+        if (journal != null) engine.recordJournal(journal);
+
+        if (timingPlanFile != null) {
+            // Before a restore, so the checkpoint's light phases take precedence over the plan's offsets
+            engine.applyTimingPlan(TimingPlan.load(Paths.get(timingPlanFile), graph));
+        }
+        Checkpoint checkpoint = null;
+        if (restoreFile != null) {
+            // Start from a warm city instead of seeding traffic; the checkpoint brings its own bus waves and generator
+            long restoreStart = System.nanoTime();
+            checkpoint = Checkpoint.read(Paths.get(restoreFile), graph);
+            engine.restore(checkpoint);
+            System.out.printf("Restored %d vehicles at tick %d in %.3f s%n", checkpoint.getVehicleCount(),
+                    checkpoint.getTick(), (System.nanoTime() - restoreStart) / 1e9);
+        }
+        CompletableFuture<Checkpoint> checkpointWritten = null;
+
+        DemandSampler demand = null;
+        if (replay != null) {
+            engine.replayJournal(replay, reroute); // All traffic comes from the journal
+        } else if (demandFile != null) {
+            // The city starts empty; trips come from the OD demand file (read slice by slice as simulated time advances)
+            demand = new DemandSampler(graph, new DemandFile.Reader(Paths.get(demandFile), graph), new Random(runSeed));
+            if (checkpoint != null && checkpoint.hasDemand()) {
+                demand.resume(checkpoint); // Continue the demand exactly where the checkpoint was taken
+            } else if (checkpoint != null) {
+                demand.startAt(checkpoint.getTick()); // Checkpoint of a run without demand: start the file at its time
+            }
+            engine.startDemand(demand);
+            if (restoreFile == null) engine.spawnBusRoute("SYSTEM_AUTO");
+        } else if (restoreFile == null) {
+            engine.startTraffic(new Random(runSeed)); // Background demand and bus waves run on the engine's simulated-time scheduler
+        }
+
+        long vehicleUpdates = 0;
+        long startNanos = System.nanoTime();
+        if (replay != null) {
+            while (!engine.isReplayFinished()) vehicleUpdates += engine.tick(); // As fast as possible up to the recorded end
+            ticks = engine.getTickCount();
+        } else {
+            long checkpointTick = (checkpointAt != null) ? (long) (checkpointAt * SimulationEngine.TICKS_PER_SECOND) : ticks;
+            for (long t = 1; t <= ticks; t++) {
+                vehicleUpdates += engine.tick();
+                if (checkpointFile != null && t == checkpointTick) {
+                    checkpointWritten = engine.checkpoint(Paths.get(checkpointFile)); // Written while the run goes on
+                }
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        if (csv != null) csv.close();
+        if (checkpointWritten != null) {
+            Checkpoint written = checkpointWritten.join();
+            System.out.printf("Checkpoint: %d vehicles at tick %d written to %s%n", written.getVehicleCount(),
+                    written.getTick(), checkpointFile);
+        }
+        if (journal != null) {
+            journal.close(engine.getTickCount());
+            System.out.printf("Journal: %d records written to %s (seed %d)%n", journal.records(), recordFile, runSeed);
+        }
+        if (replay != null) {
+            replay.close();
+            if (engine.getReplayDivergences() == 0) {
+                System.out.println("Replay: light switches match the recorded run");
+            } else {
+                System.out.printf("Replay: %d light switches differ from the recorded run, first at tick %d%n",
+                        engine.getReplayDivergences(), engine.getReplayFirstDivergence());
+            }
+        }
+
+        double simulatedSeconds = ticks / (double) SimulationEngine.TICKS_PER_SECOND;
+        System.out.printf("Simulated %d ticks (%.1f s of traffic) in %.3f s wall clock%n", ticks, simulatedSeconds, elapsedSeconds);
+        System.out.printf("Ticks/sec:           %.1f%n", ticks / elapsedSeconds);
+        System.out.printf("Vehicle-updates/sec: %.1f%n", vehicleUpdates / elapsedSeconds);
+        System.out.printf("Speed-up vs real time: %.1fx%n", simulatedSeconds / elapsedSeconds);
+        System.out.printf("Vehicles still active: %d%n", engine.vehicles.size());
+        System.out.printf("Mean delay: %.2f s per vehicle (%d vehicles)%n", engine.getMeanDelaySeconds(), engine.getDelayVehicles());
+        if (demand != null) System.out.printf("Demand: %d trips from %d slices%n", demand.getTrips(), demand.getSlices());
+        if (engine.getRouteCache() != null) System.out.println(engine.getRouteCache());
+        if (engine.getStationTrees() != null) System.out.println(engine.getStationTrees());
+        System.out.println("Path search: " + engine.getSearchStats());
+        System.out.println("Tick latency: " + engine.getMetrics());
+        System.out.printf("State checksum: %016x%n", engine.stateChecksum());
+        engine.setParallelism(1); // Release the worker pool
+    }
+}
@@ -0,0 +1,94 @@
+package simulation;
+
+import java.io.IOException;
+
+// Feeds a recorded EventJournal back into an engine that runs without its own traffic sources. Before each tick the
+// recorded spawns, placements and resets of that tick are applied; during the tick every light switch is matched against
+// the recorded ones. A mismatch means the replaying engine no longer follows the recorded run (different engine version,
+// mode or routing), and the first diverging tick is reported.
+class JournalReplay {
+    private final SimulationEngine engine;
+    private final EventJournal.Reader reader;
+    private final boolean reroute;
+
+    private boolean loaded = false;    // The reader holds a record that has not been consumed yet
+    private boolean exhausted = false;
+    private long endTick = -1;
+    private long divergences = 0;
+    private long firstDivergence = -1;
+
+    JournalReplay(SimulationEngine engine, EventJournal.Reader reader, boolean reroute) {
+        this.engine = engine;
+        this.reader = reader;
+        this.reroute = reroute;
+    }
+
+    long endTick() { return endTick; }
+    long divergences() { return divergences; }
+    long firstDivergence() { return firstDivergence; }
+
+    // True once the END record has been read and the engine has completed that many ticks (or the journal ran out).
+    boolean isFinished(long completedTicks) {
+        return endTick >= 0 ? completedTicks >= endTick : exhausted;
+    }
+
+    // Applies the inputs recorded for the given tick (and any earlier ones still pending).
+    void applyInputs(long tick) throws IOException {
+        while (load() && reader.tick <= tick) {
+            switch (reader.kind) {
+                case EventJournal.LIGHT:
+                    if (reader.tick == tick) return; // Matched during the tick
+                    diverged(reader.tick); // A recorded switch that never happened
+                    break;
+                case EventJournal.SPAWN:
+                    boolean fixed = (reader.flags & EventJournal.FLAG_FIXED_ROUTE) != 0;
+                    engine.replaySpawn(reader.id, reader.type, reader.route, reader.destination, reader.flags, reroute && !fixed);
+                    break;
+                case EventJournal.PLACE:
+                    engine.replayPlace(reader.slot, reader.pathIndex, reader.progress);
+                    break;
+                case EventJournal.RESET:
+                    engine.replayReset();
+                    break;
+                case EventJournal.END:
+                    endTick = reader.tick;
+                    break;
+            }
+            loaded = false;
+        }
+    }
+
+    // Called by the engine for each light switch of the tick being replayed.
+    void lightSwitched(long tick, int node) throws IOException {
+        if (load() && reader.kind == EventJournal.LIGHT && reader.tick == tick && reader.node == node) {
+            loaded = false;
+        } else {
+            diverged(tick); // The light switched now, but the recorded run did something else
+        }
+    }
+
+    // Called after the tick; recorded switches of this tick that did not happen are divergences.
+    void endTick(long tick) throws IOException {
+        while (load() && reader.kind == EventJournal.LIGHT && reader.tick <= tick) {
+            diverged(reader.tick);
+            loaded = false;
+        }
+        if (load() && reader.kind == EventJournal.END && reader.tick <= tick) {
+            endTick = reader.tick;
+            loaded = false;
+        }
+    }
+
+    private boolean load() throws IOException {
+        if (!loaded && !exhausted) {
+            loaded = reader.next();
+            exhausted = !loaded;
+        }
+        return loaded;
+    }
+
+    private void diverged(long tick) {
+        if (firstDivergence < 0) firstDivergence = tick;
+        divergences++;
+    }
+}
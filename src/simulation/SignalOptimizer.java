@@ -0,0 +1,328 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import models.CityGenerator;
+import models.CityGraph;
+import models.DemandFile;
+import models.MapFile;
+import models.TimingPlan;
+
+// Offline search for per-intersection signal timing (minimum, default and maximum green time and cycle offset of every
+// light, see TimingPlan) that minimises the mean vehicle delay of headless runs. A genetic algorithm evolves a population
+// of plans; each candidate is scored by simulating the same scenarios (one per seed) and averaging
+// SimulationEngine.getMeanDelaySeconds. Throughput comes from:
+//   - all runs sharing one read-only map, with every worker thread owning an engine (and so a WorldState) for the whole
+//     search, reset by checkpoint restores instead of being rebuilt;
+//   - warming each scenario up once with the starting plan and restoring the in-memory checkpoint for every evaluation,
+//     so only the measured window is simulated;
+//   - scheduling every (candidate, scenario) run as its own task on a pool with one thread per core;
+//   - common random numbers: all candidates see the same traffic, so differences in score come from the timing, and
+//     elites keep their score instead of being run again.
+// Runs restored from a checkpoint are deterministic, so a search is reproducible for a given --seed.
+public class SignalOptimizer {
+
+    private static final String USAGE = "Usage: SignalOptimizer [--map FILE | --generate grid|radial|random:INTERSECTIONS]\n"
+            + "                       [--demand FILE] [--start PLAN] [--out PLAN]\n"
+            + "                       [--generations N] [--population N] [--scenarios N]\n"
+            + "                       [--warmup SECONDS] [--duration SECONDS] [--threads N] [--event-driven] [--seed S]";
+
+    // Search space, in light updates (ticks)
+    private static final int MIN_GREEN = 10;
+    private static final int MAX_GREEN = 600;
+    private static final double MUTATION_SIGMA = 0.25; // Log-normal spread of mutated durations
+    private static final int TOURNAMENT = 3;
+    private static final int ELITES = 2;
+
+    private final CityGraph graph; // Shared by all workers
+    private final Path demandFile; // null: the built-in background generator
+    private final boolean eventDriven;
+    private final long warmupTicks, durationTicks;
+    private final long[] scenarioSeeds;
+    private final ExecutorService pool;
+    private final ThreadLocal<Worker> workers;
+    private Checkpoint[] warm; // Per scenario, shared read-only by all workers
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong simulatedTicks = new AtomicLong();
+
+    // One engine per pool thread, reused for every run on that thread.
+    private final class Worker {
+        final SimulationEngine engine = new SimulationEngine(graph);
+        final Checkpoint blank; // The empty city, to start the warm-ups from
+
+        Worker() {
+            engine.setEventDriven(eventDriven);
+            blank = engine.checkpoint().join();
+        }
+    }
+
+    public SignalOptimizer(CityGraph graph, Path demandFile, boolean eventDriven, double warmupSeconds,
+                           double durationSeconds, long[] scenarioSeeds, int threads) {
+        this.graph = graph;
+        this.demandFile = demandFile;
+        this.eventDriven = eventDriven;
+        this.warmupTicks = (long) (warmupSeconds * SimulationEngine.TICKS_PER_SECOND);
+        this.durationTicks = (long) (durationSeconds * SimulationEngine.TICKS_PER_SECOND);
+        this.scenarioSeeds = scenarioSeeds;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "signal-optimizer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    public long getRuns() { return runs.get(); }
+    public long getSimulatedTicks() { return simulatedTicks.get(); }
+
+    // Runs the warm-up of every scenario with the given plan, in parallel, and keeps the warm states.
+    public void prepare(TimingPlan start) {
+        List<Future<Checkpoint>> states = new ArrayList<>();
+        for (long seed : scenarioSeeds) states.add(pool.submit(() -> warmUp(start, seed)));
+        warm = new Checkpoint[scenarioSeeds.length];
+        for (int i = 0; i < warm.length; i++) warm[i] = join(states.get(i));
+    }
+
+    private Checkpoint warmUp(TimingPlan plan, long seed) throws IOException {
+        SimulationEngine engine = workers.get().engine;
+        engine.restore(workers.get().blank);
+        engine.applyTimingPlan(plan);
+        if (demandFile != null) {
+            startDemand(engine, seed, null);
+            engine.spawnBusRoute("SYSTEM_AUTO");
+        } else {
+            engine.startTraffic(new Random(seed));
+        }
+        for (long t = 0; t < warmupTicks; t++) engine.tick();
+        simulatedTicks.addAndGet(warmupTicks);
+        return engine.checkpoint().join();
+    }
+
+    // Starts the demand file from its beginning, or continues it from a warmed-up checkpoint with the sampler's saved
+    // random state (so the measured window does not replay the warm-up's trips).
+    private void startDemand(SimulationEngine engine, long seed, Checkpoint from) throws IOException {
+        DemandSampler demand = new DemandSampler(graph, new DemandFile.Reader(demandFile, graph), new Random(seed));
+        if (from != null) demand.resume(from);
+        engine.startDemand(demand);
+    }
+
+    // Mean delay per vehicle of one plan, averaged over the scenarios (runs in parallel; call prepare first).
+    public double score(TimingPlan plan) {
+        return score(new TimingPlan[] {plan})[0];
+    }
+
+    public double[] score(TimingPlan[] plans) {
+        List<Future<Double>> results = new ArrayList<>();
+        for (TimingPlan plan : plans) {
+            for (int i = 0; i < warm.length; i++) {
+                int scenario = i;
+                results.add(pool.submit(() -> evaluate(plan, scenario)));
+            }
+        }
+        double[] scores = new double[plans.length];
+        for (int c = 0; c < plans.length; c++) {
+            for (int i = 0; i < warm.length; i++) scores[c] += join(results.get(c * warm.length + i));
+            scores[c] /= warm.length;
+        }
+        return scores;
+    }
+
+    private double evaluate(TimingPlan plan, int scenario) throws IOException {
+        SimulationEngine engine = workers.get().engine;
+        engine.restore(warm[scenario]);
+        engine.applyTimingPlan(plan);
+        if (demandFile != null) startDemand(engine, scenarioSeeds[scenario], warm[scenario]);
+        for (long t = 0; t < durationTicks; t++) engine.tick();
+        runs.incrementAndGet();
+        simulatedTicks.addAndGet(durationTicks);
+        return engine.getMeanDelaySeconds();
+    }
+
+    // Evolves the population for the given number of generations, starting around 'start', and returns the best plan.
+    // Reports the best score of every generation on standard output.
+    public TimingPlan optimize(TimingPlan start, int generations, int populationSize, Random random) {
+        TimingPlan[] population = new TimingPlan[populationSize];
+        population[0] = new TimingPlan(start);
+        for (int c = 1; c < populationSize; c++) population[c] = mutate(start, 4.0 / start.size() + 0.25, random);
+        double[] scores = score(population);
+
+        for (int g = 1; g <= generations; g++) {
+            Integer[] order = rank(scores);
+            TimingPlan[] children = new TimingPlan[populationSize];
+            double[] childScores = new double[populationSize];
+            for (int e = 0; e < ELITES && e < populationSize; e++) { // Kept with their score (same scenarios)
+                children[e] = population[order[e]];
+                childScores[e] = scores[order[e]];
+            }
+            int fresh = Math.min(ELITES, populationSize);
+            TimingPlan[] offspring = new TimingPlan[populationSize - fresh];
+            for (int c = 0; c < offspring.length; c++) {
+                TimingPlan a = population[tournament(scores, random)];
+                TimingPlan b = population[tournament(scores, random)];
+                offspring[c] = mutate(crossover(a, b, random), 1.0 / start.size() + 0.05, random);
+            }
+            double[] offspringScores = score(offspring);
+            System.arraycopy(offspring, 0, children, fresh, offspring.length);
+            System.arraycopy(offspringScores, 0, childScores, fresh, offspring.length);
+            population = children;
+            scores = childScores;
+            System.out.printf("Generation %d: best %.2f s, median %.2f s mean delay (%d runs so far)%n",
+                    g, scores[rank(scores)[0]], scores[rank(scores)[populationSize / 2]], runs.get());
+        }
+        return population[rank(scores)[0]];
+    }
+
+    private static Integer[] rank(double[] scores) {
+        Integer[] order = new Integer[scores.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Double.compare(scores[x], scores[y]));
+        return order;
+    }
+
+    private static int tournament(double[] scores, Random random) {
+        int best = random.nextInt(scores.length);
+        for (int i = 1; i < TOURNAMENT; i++) {
+            int other = random.nextInt(scores.length);
+            if (scores[other] < scores[best]) best = other;
+        }
+        return best;
+    }
+
+    // Uniform crossover per light: each light takes all four of its values from one parent, so a timing stays consistent.
+    private static TimingPlan crossover(TimingPlan a, TimingPlan b, Random random) {
+        TimingPlan child = new TimingPlan(a);
+        for (int k = 0; k < child.size(); k++) {
+            if (!random.nextBoolean()) continue;
+            child.min[k] = b.min[k];
+            child.normal[k] = b.normal[k];
+            child.max[k] = b.max[k];
+            child.offset[k] = b.offset[k];
+        }
+        return child;
+    }
+
+    // Perturbs each light with the given probability: durations by a log-normal factor, the offset by a normal step of a
+    // fraction of the cycle. The result is repaired into 1 <= min <= default <= max and an offset within the cycle.
+    private static TimingPlan mutate(TimingPlan plan, double rate, Random random) {
+        TimingPlan child = new TimingPlan(plan);
+        for (int k = 0; k < child.size(); k++) {
+            if (random.nextDouble() >= rate) continue;
+            child.min[k] = scale(child.min[k], random);
+            child.normal[k] = scale(child.normal[k], random);
+            child.max[k] = scale(child.max[k], random);
+            int normal = Math.max(child.min[k], child.normal[k]);
+            child.min[k] = Math.min(child.min[k], normal);
+            child.normal[k] = normal;
+            child.max[k] = Math.max(child.max[k], normal);
+            int cycle = 2 * (child.normal[k] + 1);
+            child.offset[k] = Math.floorMod(child.offset[k] + (int) (random.nextGaussian() * cycle / 4), cycle);
+        }
+        return child;
+    }
+
+    private static int scale(int duration, Random random) {
+        double scaled = duration * Math.exp(random.nextGaussian() * MUTATION_SIGMA);
+        return (int) Math.max(MIN_GREEN, Math.min(MAX_GREEN, Math.round(scaled)));
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw new UncheckedIOException((IOException) e.getCause());
+            throw new IllegalStateException("Simulation run failed", e.getCause());
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String mapFile = null;
+        String generate = null;
+        String demandFile = null;
+        String startFile = null;
+        String outFile = "signals.plan";
+        int generations = 20;
+        int population = 24;
+        int scenarios = 4;
+        double warmup = 300;
+        double duration = 600;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean eventDriven = false;
+        long seed = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--map": mapFile = args[++i]; break;
+                case "--generate": generate = args[++i]; break;
+                case "--demand": demandFile = args[++i]; break;
+                case "--start": startFile = args[++i]; break;
+                case "--out": outFile = args[++i]; break;
+                case "--generations": generations = Integer.parseInt(args[++i]); break;
+                case "--population": population = Integer.parseInt(args[++i]); break;
+                case "--scenarios": scenarios = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Double.parseDouble(args[++i]); break;
+                case "--duration": duration = Double.parseDouble(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--event-driven": eventDriven = true; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println(USAGE);
+                    System.exit(2);
+            }
+        }
+
+        CityGraph graph;
+        if (mapFile != null) {
+            graph = MapFile.load(Paths.get(mapFile));
+        } else if (generate != null) {
+            String[] spec = generate.split(":");
+            graph = new CityGenerator(seed).generate(CityGenerator.Layout.valueOf(spec[0].toUpperCase()), Integer.parseInt(spec[1]));
+        } else {
+            graph = new CityGraph();
+        }
+        TimingPlan start = (startFile != null) ? TimingPlan.load(Paths.get(startFile), graph)
+                : new TimingPlan(graph.intersectionCount());
+        long[] seeds = new long[scenarios];
+        for (int i = 0; i < scenarios; i++) seeds[i] = seed * 1_000_003L + i;
+        System.out.printf("Map: %d intersections; %d scenarios of %.0f s after %.0f s warm-up, %d threads%n",
+                graph.intersectionCount(), scenarios, duration, warmup, threads);
+
+        SignalOptimizer optimizer = new SignalOptimizer(graph, demandFile != null ? Paths.get(demandFile) : null,
+                eventDriven, warmup, duration, seeds, threads);
+        long startNanos = System.nanoTime();
+        optimizer.prepare(start);
+        double baseline = optimizer.score(start);
+        System.out.printf("Starting plan: %.2f s mean delay%n", baseline);
+
+        TimingPlan best = optimizer.optimize(start, generations, population, new Random(seed));
+        double bestScore = optimizer.score(best);
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        optimizer.shutdown();
+
+        best.save(graph, Paths.get(outFile), String.format("mean delay %.2f s (starting plan %.2f s), %d scenarios of %.0f s",
+                bestScore, baseline, scenarios, duration));
+        System.out.printf("Best plan: %.2f s mean delay (%.1f%% less) -> %s%n", bestScore,
+                baseline > 0 ? 100 * (baseline - bestScore) / baseline : 0, outFile);
+        System.out.printf("%d runs in %.1f s: %.1f runs/s, %.0fx real time%n", optimizer.getRuns(), elapsed,
+                optimizer.getRuns() / elapsed, optimizer.getSimulatedTicks() / (double) SimulationEngine.TICKS_PER_SECOND / elapsed);
+    }
+}
@@ -1,24 +1,179 @@
 package simulation;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import GUI.SimulationPanel;
+import metrics.EngineMetrics;
 import models.*;
+import routing.CachingRouter;
+import routing.EdgeWeights;
+import routing.Router;
+import routing.RoutingAlgorithm;
+import routing.SearchStats;
+import routing.StationTreeRouter;
 
 // Manages the core simulation logic, including vehicle movement, path finding (Dijkstra), traffic light updates, and thread management.
 public class SimulationEngine extends Thread {
-    CityGraph graph;
-    public List<Vehicle> vehicles = new CopyOnWriteArrayList<>(); // Thread-safe list to prevent concurrency issues during iteration
+    public static final int TICK_MILLIS = 50; // Simulated time covered by one tick of the main loop
+    public static final int TICKS_PER_SECOND = 1000 / TICK_MILLIS;
+
+    public static final int DEFAULT_ROUTE_CACHE_SIZE = 4096;
+    public static final double DEFAULT_ROUTE_TOLERANCE = 0.25; // Relative congestion drift before a cached route is recomputed
+    public static final int BUS_WAVE_INTERVAL_SECONDS = 25; // Simulated time between the bus waves of spawnBusRoute
+
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    // Writes checkpoint files off the engine thread (see checkpoint); daemon, so it never keeps the JVM alive
+    private static final ExecutorService CHECKPOINT_WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "checkpoint-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    CityGraph graph;                   // Topology only; may be shared with other engines
+    private volatile WorldState world; // This run's queues, lights and vehicles; replaced as a whole by resetTraffic
+    public VehicleStore vehicles;      // world.vehicles: structure-of-arrays vehicle state; only the engine thread mutates it
     SimulationPanel panel;
 
     String currentUserRole = "";
     String currentUserId = "";
     int carIdCounter = 1;
     int trafficLoopCount = 0;
-    private Thread busScheduleThread;
+    private final SimulationScheduler scheduler = new SimulationScheduler(); // Engine-thread tasks on simulated time
+    private final Map<SimulationScheduler.Task, Integer> busWaves = new LinkedHashMap<>(); // Pending waves of spawnBusRoute -> group
+    private SimulationScheduler.Task trafficGenerator; // Background demand started by startTraffic
+    private Random trafficRandom;                      // The generator's Random (saved in checkpoints)
+    private SimulationScheduler.Task demandTask; // Spawns the trips of an OD demand file, see startDemand
+    private DemandSampler demand;                // Its sampler (position and Random saved in checkpoints)
+
+    // State changes requested from other threads (EDT, schedule threads), applied at the start of the next tick
+    private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+
+    private final EdgeWeights weights;
+    private Router search;          // The path search itself (see configureRouting)
+    private Router router;          // What the engine calls: the search, possibly behind the route cache and the station trees
+    private CachingRouter routeCache;
+    private StationTreeRouter stationTrees; // Maintained routes from and to the emergency bases, null when disabled
+    private int stationTreeBases;
+    public static final int DEFAULT_ROUTE_REFRESH_SECONDS = 30; // How often snapshot-based routers (CCH) see new congestion
+    private int routeRefreshTicks = DEFAULT_ROUTE_REFRESH_SECONDS * TICKS_PER_SECOND;
+    private long tickCount = 0;
+
+    // Parallel tick (see tick()): pool is null when running single-threaded
+    private static final int PARALLEL_THRESHOLD = 2048; // Smaller batches are not worth the fork-join overhead
+    private static final int PARALLEL_CHUNK = 1024;
+    private ForkJoinPool pool;
+    private boolean[] arrived = new boolean[0];
+    private final AtomicLong entrySequence = new AtomicLong(); // Logical FIFO stamps for queue ordering (deterministic, unlike System.nanoTime)
+
+    // Event-driven mode (see setEventDriven): calendar is null when every vehicle is stepped every tick
+    private static final long NO_EVENT = -1;
+    private static final long WAITING = -2; // Stopped at the end of its edge until the light turns green or the queue head leaves
+    private EventCalendar calendar;
+    private long[] pending = new long[0]; // Per slot: tick of the vehicle's next event, NO_EVENT or WAITING
+    private int[] due = new int[64];      // Slots whose event is being processed in the current tick, -1 once rejected
+    private long[] lightSynced;           // Per node index: last tick whose update() has been applied to the light
+    private long[] lightDue;              // Per node index: tick of the light's scheduled switch
+    private long lightClock;              // Last tick whose light switches have been processed
+
+    // Latest published world state for the renderer and other readers (see publishSnapshot)
+    private volatile WorldSnapshot snapshot = WorldSnapshot.EMPTY;
+    private volatile boolean publishSnapshots;
+
+    private final EngineMetrics metrics;
+    private int queuedVehicles = 0; // Vehicles currently on a road queue (engine thread only; published to metrics per tick)
+
+    // Vehicle delay since the last reset or restore (see getMeanDelaySeconds), engine thread only
+    private long delayTicks = 0;    // Ticks held at the end of an edge, summed over the legs completed so far
+    private long delayVehicles = 0; // Vehicles that took part: live at the start plus spawned since
+    private long delayStart = 0;    // Tick at which the measurement started
+
+    // Reproducible runs (see setSeed, recordJournal, replayJournal)
+    private Long seed;                  // Seed of the traffic generator for initializeTraffic, random when null
+    private EventJournal.Writer journal; // Records the run's inputs, null when not recording
+    private JournalReplay replay;        // Supplies the inputs of a recorded run, null when not replaying
 
     public SimulationEngine(CityGraph graph) {
         this.graph = graph;
+        this.world = new WorldState(graph);
+        this.vehicles = world.vehicles;
+        this.weights = e -> world.currentWeight(e);
+        this.search = RoutingAlgorithm.DIJKSTRA.create(graph, weights);
+        this.stationTreeBases = StationTreeRouter.defaultBases(graph);
+        this.metrics = new EngineMetrics(graph, TICK_MILLIS * 1_000_000L,
+                () -> search.getStats() != null ? search.getStats().getSettledHistogram() : null);
+        configureRouteCache(DEFAULT_ROUTE_CACHE_SIZE, DEFAULT_ROUTE_TOLERANCE);
+    }
+
+    // Selects the path search algorithm (Dijkstra by default). Keeps the route cache settings but starts with an empty cache.
+    public void configureRouting(RoutingAlgorithm algorithm) {
+        search = algorithm.create(graph, weights);
+        rebuildRouting();
+    }
+
+    // Rebuilds the routing chain with a route cache of the given size (0 disables caching).
+    public void configureRouteCache(int maxEntries, double tolerance) {
+        if (maxEntries > 0) {
+            routeCache = new CachingRouter(search, graph, weights, maxEntries, tolerance);
+            router = routeCache;
+        } else {
+            routeCache = null;
+            router = search;
+        }
+        if (stationTreeBases > 0) {
+            stationTrees = new StationTreeRouter(router, graph, weights, stationTreeBases);
+            router = stationTrees;
+        } else {
+            stationTrees = null;
+        }
+    }
+
+    // Rebuilds the routing chain with the current cache settings.
+    private void rebuildRouting() {
+        if (routeCache != null) {
+            configureRouteCache(routeCache.getMaxEntries(), routeCache.getTolerance());
+        } else {
+            configureRouteCache(0, DEFAULT_ROUTE_TOLERANCE);
+        }
+    }
+
+    // Keeps shortest-path trees from and to up to maxBases emergency bases (0 disables them). The default fits
+    // StationTreeRouter.DEFAULT_NODE_BUDGET, which covers every base of the built-in city and of mid-sized generated maps.
+    public void configureStationTrees(int maxBases) {
+        stationTreeBases = maxBases;
+        rebuildRouting();
+    }
+
+    // Sets how many simulated seconds pass between weight refreshes of snapshot-based routers.
+    public void setRouteRefreshInterval(int seconds) {
+        routeRefreshTicks = Math.max(1, seconds * TICKS_PER_SECOND);
+    }
+
+    // Query counters of the path search (cache hits are not searches and are not counted).
+    public SearchStats getSearchStats() {
+        return search.getStats();
+    }
+
+    // Tick, routing, traffic and paint instrumentation (see metrics.EngineMetrics).
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public CachingRouter getRouteCache() {
+        return routeCache;
+    }
+
+    public StationTreeRouter getStationTrees() {
+        return stationTrees;
     }
 
     public void setPanelToRefresh(SimulationPanel panel) {
@@ -33,152 +188,314 @@ public class SimulationEngine extends Thread {
 
     // Clears all active vehicles, resets counters, and stops bus schedules. Called when the user logs out or resets the view.
     public void resetTraffic() {
-        if (busScheduleThread != null && busScheduleThread.isAlive()) {
-            busScheduleThread.interrupt();
-        }
+        onEngineThread(() -> {
+            cancelBusWaves();
+            journal(w -> w.reset(tickCount + 1));
+            clearTraffic();
+        });
+    }
 
-        vehicles.clear();
+    // Removes every vehicle (the engine-thread part of resetTraffic) by switching to a fresh world whose lights carry on
+    // from the current ones. The old queues are dropped with their world rather than emptied road by road; only the
+    // station trees hear about the roads that were occupied.
+    private void clearTraffic() {
+        if (calendar != null) syncLights(); // Timers are copied into the new world
+        WorldState old = world;
+        world = old.cleared();
+        vehicles = world.vehicles;
         carIdCounter = 1;
+        queuedVehicles = 0;
+        delayTicks = delayVehicles = 0;
+        delayStart = tickCount;
 
-        // Clear all waiting queues on edges
-        if (graph != null && graph.adjList != null) {
-            for (List<Edge> edges : graph.adjList.values()) {
-                for (Edge e : edges) {
-                    if (e.vehicleQueue != null) {
-                        e.vehicleQueue.clear();
-                    }
-                }
+        if (stationTrees != null) {
+            for (int i = 0; i < old.usedEdgeCount(); i++) {
+                int e = old.usedEdge(i);
+                if (old.queueSize(e) > 0) stationTrees.edgeChanged(e);
             }
         }
-    }
-
-    // Implements Dijkstra's algorithm to find the shortest path based on current edge weights (distance + congestion).
-    public List<Node> findPath(Node start, Node end) {
-        Map<Integer, Double> distances = new HashMap<>();
-        Map<Integer, Node> previous = new HashMap<>();
-        Set<Integer> visited = new HashSet<>();
-
-        PriorityQueue<PQNode> queue = new PriorityQueue<>();
-
-        for (int id : graph.nodes.keySet()) {
-            distances.put(id, Double.MAX_VALUE);
+        if (calendar != null) {
+            vehicles.setClock(tickCount);
+            restartCalendar();
         }
-        distances.put(start.id, 0.0);
-        queue.add(new PQNode(start, 0.0));
+    }
 
-        while (!queue.isEmpty()) {
-            PQNode currentPQ = queue.poll();
-            Node current = currentPQ.node;
+    // The state of the current run. Read it between ticks; resetTraffic and restore replace it.
+    public WorldState getWorld() {
+        return world;
+    }
 
-            if (visited.contains(current.id)) continue;
-            visited.add(current.id);
+    // Turns the per-tick snapshots on or off. They cost one pass over the vehicles per tick, so they are off until a reader
+    // (e.g. MapPanel) asks for them; enabling also publishes the current state right away.
+    public void setSnapshotPublishing(boolean enabled) {
+        publishSnapshots = enabled;
+        if (enabled) onEngineThread(this::publishSnapshot);
+    }
 
-            if (current == end) break;
-            if (currentPQ.cost > distances.get(current.id)) continue;
+    // The state at the end of the most recent tick. Safe to call from any thread; the result never changes.
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
 
-            for (Edge edge : graph.adjList.get(current.id)) {
-                double newDist = distances.get(current.id) + edge.getCurrentWeight();
-                if (newDist < distances.get(edge.target.id)) {
-                    distances.put(edge.target.id, newDist);
-                    previous.put(edge.target.id, current);
-                    queue.add(new PQNode(edge.target, newDist));
-                }
-            }
+    // Copies vehicle positions and light phases into a new immutable snapshot and swaps it in with one volatile write.
+    private void publishSnapshot() {
+        WorldSnapshot published = new WorldSnapshot(tickCount, vehicles.size(), graph.intersectionCount());
+        int i = 0;
+        for (int s = 0; s < vehicles.highWater(); s++) {
+            if (!vehicles.isLive(s)) continue;
+            published.ids[i] = vehicles.view(s).id;
+            published.types[i] = TYPES[vehicles.type[s]];
+            published.current[i] = vehicles.current[s];
+            published.next[i] = vehicles.next[s];
+            published.progress[i] = vehicles.progressAt(s);
+            published.returning[i] = vehicles.returning[s];
+            published.paths[i] = vehicles.path[s];
+            i++;
         }
+        for (int k = 0; k < graph.intersectionCount(); k++) {
+            published.northSouthGreen[k] = world.lightAt(k).northSouthGreen;
+        }
+        snapshot = published;
+    }
 
-        // Reconstruct path
-        List<Node> path = new ArrayList<>();
-        Node curr = end;
-        if (distances.get(end.id) == Double.MAX_VALUE) return null; // No path found
-
-        while (curr != null) {
-            path.add(0, curr);
-            curr = previous.get(curr.id);
+    // Runs an action that changes simulation state on the engine thread: immediately when called from it (or when the
+    // engine thread is not running, e.g. headless), otherwise queued for the start of the next tick.
+    private void onEngineThread(Runnable action) {
+        if (Thread.currentThread() == this || !isAlive()) {
+            action.run();
+        } else {
+            inbox.add(action);
         }
+    }
 
-        if (path.isEmpty() || path.get(0) != start) return null;
+    // Finds the shortest path based on current edge weights (distance + congestion). See routing.DijkstraRouter.
+    public List<Node> findPath(Node start, Node end) {
+        int[] route = route(start.index, end.index);
+        if (route == null) return null; // No path found
 
+        List<Node> path = new ArrayList<>(route.length);
+        for (int index : route) path.add(graph.node(index));
         return path;
     }
 
-    // Helper class for Priority Queue in Dijkstra
-    private static class PQNode implements Comparable<PQNode> {
-        Node node;
-        double cost;
-        public PQNode(Node node, double cost) { this.node = node; this.cost = cost; }
-        @Override public int compareTo(PQNode o) { return Double.compare(this.cost, o.cost); }
+    // Queries the routing chain and records the latency.
+    private int[] route(int from, int to) {
+        long start = System.nanoTime();
+        int[] path = router.route(from, to);
+        metrics.routeCompleted(System.nanoTime() - start);
+        return path;
     }
 
-    // Calculates a path and spawns a new vehicle into the simulation.
+    // Calculates a path and spawns a new vehicle into the simulation. May be called from any thread; the route is computed
+    // on the caller's thread and the vehicle joins the simulation on the engine thread.
     public boolean spawnVehicle(Node start, Node end, VehicleType type) {
-        List<Node> path = findPath(start, end);
-        if (path != null) {
-            String id = type.toString().substring(0, 3) + (carIdCounter++);
-            Vehicle v = new Vehicle(id, type, start, end, path);
-
-            // Add to the first edge's queue
-            if (path.size() > 1) {
-                Edge firstEdge = graph.getEdge(start.id, path.get(1).id);
-                if (firstEdge != null) {
-                    v.currentEdgeObj = firstEdge;
-                    v.entryTime = System.nanoTime();
-                    firstEdge.vehicleQueue.add(v);
-                }
+        int[] route = route(start.index, end.index);
+        if (route == null || route.length < 2) return false; // No path, or already at the destination
+        int flags = (Thread.currentThread() != this && isAlive()) ? EventJournal.FLAG_DISPATCH : 0;
+        onEngineThread(() -> addVehicle(type.toString().substring(0, 3) + (carIdCounter++), type, route, end.index, flags));
+        return true;
+    }
+
+    // Spawns a batch of trips (e.g. a morning peak from a few residential blocks). The trips are grouped by origin and each
+    // origin is routed with a single one-to-many search (Router.routeMany) on the caller's thread, so all routes see the
+    // road weights from before the batch. The vehicles then join on the engine thread in one step, in list order (ids,
+    // slots and entry order as if spawned one by one), and are queued road by road. Trips without a path or that end at
+    // their origin get no vehicle. Returns the number of trips routed.
+    public int spawnVehicles(List<TripRequest> trips) {
+        int n = trips.size();
+        VehicleType[] types = new VehicleType[n];
+        int[] destinations = new int[n];
+        long[] byOrigin = new long[n]; // origin << 32 | trip index
+        for (int i = 0; i < n; i++) {
+            TripRequest trip = trips.get(i);
+            types[i] = trip.type;
+            destinations[i] = trip.destination.index;
+            byOrigin[i] = ((long) trip.origin.index << 32) | i;
+        }
+        Arrays.sort(byOrigin);
+
+        int[][] routes = new int[n][];
+        int routed = 0;
+        for (int first = 0, last; first < n; first = last) {
+            int origin = (int) (byOrigin[first] >>> 32);
+            for (last = first + 1; last < n && (int) (byOrigin[last] >>> 32) == origin; last++) {}
+            int[] targets = new int[last - first];
+            for (int k = first; k < last; k++) targets[k - first] = destinations[(int) byOrigin[k]];
+
+            long start = System.nanoTime();
+            int[][] paths = router.routeMany(origin, targets);
+            metrics.routeCompleted(System.nanoTime() - start);
+            for (int k = first; k < last; k++) {
+                int[] path = paths[k - first];
+                if (path != null && path.length < 2) path = null; // Already at the destination: nothing to drive
+                routes[(int) byOrigin[k]] = path;
+                if (path != null) routed++;
             }
-            vehicles.add(v);
-            return true;
         }
-        return false;
+
+        int flags = (Thread.currentThread() != this && isAlive()) ? EventJournal.FLAG_DISPATCH : 0;
+        onEngineThread(() -> addVehicles(types, routes, destinations, flags));
+        return routed;
+    }
+
+    // Allocates a store slot for the vehicle and puts it on the first edge of its route.
+    private int addVehicle(String id, VehicleType type, int[] route, int destination, int journalFlags) {
+        journal(w -> w.spawn(tickCount + 1, id, type, journalFlags, destination, route));
+        int s = vehicles.allocate(id, type, route, destination);
+        metrics.vehicleSpawned();
+        delayVehicles++;
+        beginLeg(s);
+        return s;
     }
 
-    // Defines bus routes and schedules their dispatch in waves using a separate thread.
+    // Defines bus routes and schedules their dispatch in waves on simulated time. Replaces waves still pending from a previous call.
     public void spawnBusRoute(String driverId) {
+        spawnBusWave(1); // Group 1 (Starts immediately)
+
+        onEngineThread(() -> {
+            cancelBusWaves();
+            long interval = (long) BUS_WAVE_INTERVAL_SECONDS * TICKS_PER_SECOND;
+            scheduleBusWave(interval, 2);     // Group 2 after 25 seconds
+            scheduleBusWave(2 * interval, 3); // Group 3 after another 25 seconds
+        });
+    }
+
+    private void cancelBusWaves() {
+        for (SimulationScheduler.Task wave : busWaves.keySet()) wave.cancel();
+        busWaves.clear();
+    }
+
+    private void scheduleBusWave(long delayTicks, int group) {
+        busWaves.put(scheduler.schedule(delayTicks, () -> spawnBusWave(group)), group);
+    }
+
+    // Simulated-time task scheduler, advanced at the start of every tick. Use it from the engine thread only.
+    public SimulationScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Dispatches one bus on each of the three loop routes. Wave 1 buses are BUS-1A/1B/1C, wave 2 are BUS-2A/2B/2C, and so on.
+    public void spawnBusWave(int wave) {
         int[] ids1 = {71, 2, 16, 15, 14, 17, 7, 8, 9, 4, 3, 4, 2, 71};
         int[] ids2 = {72, 18, 17, 14, 15, 16, 1, 6, 5, 4, 9, 8, 7, 17, 18, 72};
         int[] ids3 = {73, 9, 8, 10, 82, 11, 12, 13, 14, 17, 7, 8, 9, 73};
 
-        List<Node> route1 = new ArrayList<>(); for (int id : ids1) route1.add(graph.nodes.get(id));
-        List<Node> route2 = new ArrayList<>(); for (int id : ids2) route2.add(graph.nodes.get(id));
-        List<Node> route3 = new ArrayList<>(); for (int id : ids3) route3.add(graph.nodes.get(id));
+        createBusAndAddToQueue("BUS-" + wave + "A", ids1);
+        createBusAndAddToQueue("BUS-" + wave + "B", ids2);
+        createBusAndAddToQueue("BUS-" + wave + "C", ids3);
+    }
 
-        // Group 1 (Starts immediately)
-        createBusAndAddToQueue("BUS-1A", route1);
-        createBusAndAddToQueue("BUS-1B", route2);
-        createBusAndAddToQueue("BUS-1C", route3);
+    private void createBusAndAddToQueue(String id, int[] nodeIds) {
+        int[] route = new int[nodeIds.length];
+        for (int i = 0; i < nodeIds.length; i++) {
+            route[i] = graph.indexOf(nodeIds[i]);
+            if (route[i] < 0 || (i > 0 && graph.edgeIndex(route[i - 1], route[i]) < 0)) return; // Route does not exist on this map
+        }
+        if (route.length < 2) return;
+        onEngineThread(() -> addVehicle(id, VehicleType.BUS, route, route[route.length - 1], EventJournal.FLAG_FIXED_ROUTE));
+    }
 
-        busScheduleThread = new Thread(() -> {
-            try {
-                Thread.sleep(25000); // Wait 25 seconds for Group 2
-                if (Thread.currentThread().isInterrupted()) return;
-                createBusAndAddToQueue("BUS-2A", route1);
-                createBusAndAddToQueue("BUS-2B", route2);
-                createBusAndAddToQueue("BUS-2C", route3);
-
-                Thread.sleep(25000); // Wait another 25 seconds for Group 3
-                if (Thread.currentThread().isInterrupted()) return;
-                createBusAndAddToQueue("BUS-3A", route1);
-                createBusAndAddToQueue("BUS-3B", route2);
-                createBusAndAddToQueue("BUS-3C", route3);
-
-            } catch (InterruptedException e) { // Thread interrupted
+    // Adds the routed vehicles of a spawnVehicles batch. Slots, ids and entry stamps are handed out in trip order, then
+    // the vehicles are sorted by first road and each road takes its group under one lock (Edge.enterAll).
+    private void addVehicles(VehicleType[] types, int[][] routes, int[] destinations, int journalFlags) {
+        int n = routes.length;
+        int[] slots = new int[n];
+        long[] byEdge = new long[n]; // edge << 32 | trip index
+        int queued = 0;
+        for (int i = 0; i < n; i++) {
+            if (routes[i] == null) continue;
+            VehicleType type = types[i];
+            int[] route = routes[i];
+            int destination = destinations[i];
+            String id = type.toString().substring(0, 3) + (carIdCounter++);
+            journal(w -> w.spawn(tickCount + 1, id, type, journalFlags, destination, route));
+            int s = vehicles.allocate(id, type, route, destination);
+            metrics.vehicleSpawned();
+            delayVehicles++;
+            slots[i] = s;
+            if (vehicles.next[s] < 0) continue;
+
+            int e = prepareLeg(s);
+            if (e >= 0) {
+                byEdge[queued++] = ((long) e << 32) | i;
+            } else if (calendar != null) {
+                vehicles.legTick[s] = tickCount;
+                scheduleArrival(s);
             }
-        });
-        busScheduleThread.start();
+        }
+        Arrays.sort(byEdge, 0, queued); // Stable per road: trip index order is entry order
+
+        Vehicle[] batch = new Vehicle[queued];
+        for (int first = 0, last; first < queued; first = last) {
+            int e = (int) (byEdge[first] >>> 32);
+            for (last = first; last < queued && (int) (byEdge[last] >>> 32) == e; last++) {
+                batch[last] = vehicles.view(slots[(int) byEdge[last]]);
+            }
+            Edge road = graph.edge(e);
+            world.enterAll(road, batch, first, last);
+            queuedVehicles += last - first;
+            if (stationTrees != null) stationTrees.edgeChanged(e);
+            if (calendar != null) {
+                for (int k = first; k < last; k++) {
+                    int s = batch[k].slot;
+                    vehicles.legTick[s] = tickCount;
+                    scheduleArrival(s);
+                }
+                if (road.target.type == NodeType.INTERSECTION) lightLoadChanged(road.target.index);
+            }
+        }
     }
 
-    private void createBusAndAddToQueue(String id, List<Node> route) {
-        if (route.isEmpty()) return;
-        Vehicle v = new Vehicle(id, VehicleType.BUS, route.get(0), route.get(route.size()-1), route);
+    // Starts the leg current -> next of vehicle slot s: computes its per-tick progress and queues it on that road
+    // (which also updates the light's approach count).
+    private void beginLeg(int s) {
+        if (vehicles.next[s] < 0) return;
+        int e = prepareLeg(s);
+        if (e >= 0) {
+            world.enter(graph.edge(e), vehicles.view(s));
+            queuedVehicles++;
+            if (stationTrees != null) stationTrees.edgeChanged(e);
+        }
+        if (calendar != null) {
+            vehicles.legTick[s] = tickCount;
+            scheduleArrival(s);
+            int to = vehicles.next[s];
+            if (e >= 0 && graph.node(to).type == NodeType.INTERSECTION) lightLoadChanged(to);
+        }
+    }
+
+    // Computes the per-tick progress of the leg current -> next of slot s and, if that road exists, records it and stamps
+    // the entry order. Returns the road's edge index or -1. The caller queues the vehicle.
+    private int prepareLeg(int s) {
+        int from = vehicles.current[s];
+        int to = vehicles.next[s];
+        Node a = graph.node(from), b = graph.node(to);
+        double dx = b.x - a.x;
+        double dy = b.y - a.y;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        vehicles.step[s] = (TYPES[vehicles.type[s]].speed * 300.0) / Math.max(distance, 1.0);
 
-        if (route.size() > 1) {
-            Edge e = graph.getEdge(route.get(0).id, route.get(1).id);
-            if (e != null) {
-                v.currentEdgeObj = e;
-                v.entryTime = System.nanoTime();
-                e.vehicleQueue.add(v);
+        int e = graph.edgeIndex(from, to);
+        if (e >= 0) {
+            vehicles.edge[s] = e;
+            vehicles.entryTime[s] = entrySequence.incrementAndGet();
+        }
+        return e;
+    }
+
+    private void leaveEdge(int s) {
+        int e = vehicles.edge[s];
+        if (e >= 0) {
+            Edge road = graph.edge(e);
+            world.leave(road, vehicles.view(s));
+            queuedVehicles--;
+            if (stationTrees != null) stationTrees.edgeChanged(e);
+            vehicles.edge[s] = -1;
+            if (calendar != null) {
+                wakeHead(e); // The next vehicle in line may now be allowed through
+                if (road.target.type == NodeType.INTERSECTION) lightLoadChanged(road.target.index);
             }
         }
-        vehicles.add(v);
     }
 
     // Main Simulation Loop. Updates vehicle positions, traffic lights, and repaints the UI.
@@ -186,212 +503,847 @@ public class SimulationEngine extends Thread {
     public void run() {
         while (true) {
             try {
-                for (Vehicle v : vehicles) {
-                    moveVehicle(v);
-                }
-                updateLights();
+                tick();
                 if (panel != null) panel.repaint();
-                Thread.sleep(50);
+                Thread.sleep(TICK_MILLIS);
             } catch (InterruptedException e) { e.printStackTrace(); }
         }
     }
 
-    // Handles movement logic, traffic light checks, and priority queues.
-    private void moveVehicle(Vehicle v) {
-        if (v.path.isEmpty() || v.next == null) return;
+    // Advances the simulation by one step without any GUI or wall-clock coupling. Returns the number of vehicles updated.
+    // Two phases: (1) every vehicle computes its move against the state at the start of the tick, touching only its own
+    // progress, so this phase may run on several cores; (2) vehicles that reached a node are committed one by one in slot
+    // order (queue removal/insertion, end of path, re-routing). Sequential and parallel ticks therefore give identical results.
+    public int tick() {
+        long start = System.nanoTime();
+        for (Runnable action; (action = inbox.poll()) != null; ) {
+            action.run();
+        }
+        scheduler.runDue(tickCount);
+        if (replay != null) replayInputs();
+        int updated = (calendar != null) ? eventTick() : stepTick();
+        if (replay != null) replayChecks();
+        if (publishSnapshots) publishSnapshot();
+        metrics.setQueuedVehicles(queuedVehicles);
+        metrics.tickCompleted(System.nanoTime() - start);
+        return updated;
+    }
 
-        // 1. Calculate movement vector and speed
-        double dx = v.next.x - v.current.x;
-        double dy = v.next.y - v.current.y;
-        double distance = Math.sqrt(dx * dx + dy * dy);
-        double normalizedSpeed = (v.type.speed * 300.0) / Math.max(distance, 1.0);
+    // One tick of the fixed-step engine: phases 1 and 2 over every vehicle, then all lights.
+    private int stepTick() {
+        int limit = vehicles.highWater();
+        if (arrived.length < limit) arrived = new boolean[vehicles.capacity()];
 
-        // 2. Look-ahead check: Stop if approaching a red light or occupied intersection
-        if (v.progress + normalizedSpeed >= 1.0 && v.next.type == NodeType.INTERSECTION) {
-            TrafficLight light = v.next.trafficLight;
-            boolean lightGreen = light.canPass(v.current, v.next);
+        // Phase 1: compute moves
+        if (pool != null && vehicles.size() >= PARALLEL_THRESHOLD) {
+            pool.invoke(new AdvanceTask(0, limit));
+        } else {
+            for (int s = 0; s < limit; s++) arrived[s] = advance(s);
+        }
 
-            Vehicle topPriority = null;
-            if (v.currentEdgeObj != null) {
-                topPriority = v.currentEdgeObj.vehicleQueue.peek();
+        // Phase 2: deterministic commit of edge transitions
+        for (int s = 0; s < limit; s++) {
+            if (arrived[s]) {
+                arrived[s] = false;
+                arrive(s);
             }
+        }
+
+        updateLights();
+        if (++tickCount % routeRefreshTicks == 0) router.refreshWeights();
+        return vehicles.size();
+    }
 
-            // Check if this vehicle is the one allowed to move from the queue
-            boolean amIPriority = (topPriority == null || topPriority == v);
-            boolean isEmergency = (v.type.priority <= 3);
+    // Uses a fork-join pool with the given number of worker threads for the move phase (1 = single-threaded).
+    public void setParallelism(int threads) {
+        if (pool != null) pool.shutdown();
+        pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+    }
 
-            if (isEmergency) {
-                if (!amIPriority) return; // Emergency vehicles only stop if another vehicle is physically blocking
-            } else {
-                if (!lightGreen || !amIPriority) return; // Normal vehicles stop at red lights or if not priority
+    // Splits the slot range into contiguous chunks for phase 1. Any split is valid because phase 1 only writes per-vehicle state.
+    private class AdvanceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        AdvanceTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK) {
+                for (int s = from; s < to; s++) arrived[s] = advance(s);
+                return;
             }
+            int mid = (from + to) >>> 1;
+            invokeAll(new AdvanceTask(from, mid), new AdvanceTask(mid, to));
         }
+    }
 
-        // 3. Move the vehicle
-        v.progress += normalizedSpeed;
+    // Phase 1 of the movement logic: traffic light checks, priority queues and progress along the current edge.
+    // Only reads shared state (lights, queue heads). Returns true if the vehicle in slot s reached its next node this tick.
+    private boolean advance(int s) {
+        int next = vehicles.next[s];
+        if (next < 0) return false; // Free slot or stopped vehicle
 
-        // 4. Handle reaching the next node
-        if (v.progress >= 1.0) {
-            v.progress = 0;
-            if (v.currentEdgeObj != null) v.currentEdgeObj.vehicleQueue.remove(v);
+        double step = vehicles.step[s];
 
-            v.currentPathIndex++;
-            if (v.currentPathIndex >= v.path.size() - 1) {
-                handleEndOfPath(v);
-            } else {
-                v.current = v.path.get(v.currentPathIndex);
-                v.next = v.path.get(v.currentPathIndex + 1);
-
-                Edge newEdge = graph.getEdge(v.current.id, v.next.id); // Add to the queue of the new road segment
-                if (newEdge != null) {
-                    v.currentEdgeObj = newEdge;
-                    v.entryTime = System.nanoTime();
-                    newEdge.vehicleQueue.add(v);
-                }
-            }
+        // Look-ahead check: Stop if approaching a red light or occupied intersection
+        if (vehicles.progress[s] + step >= 1.0 && !mayEnter(s)) {
+            vehicles.waitTicks[s]++; // Own slot only, so safe in the parallel phase
+            return false;
+        }
+
+        // Move the vehicle
+        vehicles.progress[s] += step;
+        return vehicles.progress[s] >= 1.0;
+    }
+
+    // Traffic light and priority queue check for a vehicle at the end of its edge. Only reads shared state.
+    private boolean mayEnter(int s) {
+        WorldState w = world;
+        TrafficLight light = w.light(vehicles.next[s]);
+        if (light == null) return true; // Not an intersection
+
+        int e = vehicles.edge[s];
+        boolean lightGreen = e >= 0 && light.canPass(graph.edge(e));
+
+        // Check if this vehicle is the one allowed to move from the queue
+        Vehicle topPriority = (e >= 0) ? w.queueHead(e) : null;
+        boolean amIPriority = (topPriority == null || topPriority == vehicles.view(s));
+        boolean isEmergency = (TYPES[vehicles.type[s]].priority <= 3);
+
+        if (isEmergency) {
+            return amIPriority; // Emergency vehicles only stop if another vehicle is physically blocking
         }
+        return lightGreen && amIPriority; // Normal vehicles stop at red lights or if not priority
+    }
+
+    // Phase 2 of the movement logic: the vehicle reached its next node, so move it onto the following road segment.
+    private void arrive(int s) {
+        if (calendar != null) {
+            delayTicks += Math.max(0, tickCount - Math.max(vehicles.dueTick[s], delayStart + 1));
+        } else {
+            delayTicks += vehicles.waitTicks[s];
+            vehicles.waitTicks[s] = 0;
+        }
+        vehicles.progress[s] = 0;
+        leaveEdge(s);
+
+        int[] path = vehicles.path[s];
+        int index = ++vehicles.pathIndex[s];
+        if (index >= path.length - 1) {
+            handleEndOfPath(s);
+        } else {
+            vehicles.current[s] = path[index];
+            vehicles.next[s] = path[index + 1];
+            beginLeg(s); // Add to the queue of the new road segment
+        }
+    }
+
+    // Order-sensitive digest of the vehicle and light state, used to check that two runs with the same seed are identical.
+    public long stateChecksum() {
+        if (calendar != null) syncLights();
+        long h = 1125899906842597L;
+        for (int s = 0; s < vehicles.highWater(); s++) {
+            if (!vehicles.isLive(s)) continue;
+            h = 31 * h + vehicles.view(s).id.hashCode();
+            h = 31 * h + vehicles.pathIndex[s];
+            h = 31 * h + Double.doubleToLongBits(vehicles.progressAt(s));
+            h = 31 * h + vehicles.current[s];
+            h = 31 * h + vehicles.entryTime[s];
+        }
+        for (int k = 0; k < graph.intersectionCount(); k++) {
+            TrafficLight light = world.lightAt(k);
+            h = 31 * h + (light.northSouthGreen ? 1 : 0);
+            h = 31 * h + light.timer;
+        }
+        return h;
     }
 
     // Determines what happens when a vehicle reaches its destination. Buses loop, Emergency vehicles return to base, others deleted.
-    private void handleEndOfPath(Vehicle v) {
-        boolean isEmergency = (v.type == VehicleType.AMBULANCE || v.type == VehicleType.POLICE_CAR || v.type == VehicleType.FIRE_TRUCK);
-
-        if (v.type == VehicleType.BUS) { // Reset bus to start of the loop
-            v.currentPathIndex = 0;
-            v.current = v.path.get(0);
-            v.next = v.path.get(1);
-            v.progress = 0;
-
-            Edge newEdge = graph.getEdge(v.current.id, v.next.id);
-            if (newEdge != null) {
-                v.currentEdgeObj = newEdge;
-                v.entryTime = System.nanoTime();
-                newEdge.vehicleQueue.add(v);
-            }
-            return;
-        }
-        else if (isEmergency && !v.isReturning) { // Calculate return path for emergency vehicles
-            Node currentLoc = v.path.get(v.path.size()-1);
-            Node base = v.path.get(0);
-            List<Node> returnPath = findPath(currentLoc, base);
-            if (returnPath != null) {
-                v.path = returnPath;
-                v.currentPathIndex = 0;
-                v.current = returnPath.get(0);
-                v.next = returnPath.get(1);
-                v.destination = base;
-                v.isReturning = true;
-                Edge e = graph.getEdge(v.current.id, v.next.id);
-                if(e != null) {
-                    v.currentEdgeObj = e;
-                    v.entryTime = System.nanoTime();
-                    e.vehicleQueue.add(v);
-                }
+    private void handleEndOfPath(int s) {
+        VehicleType type = TYPES[vehicles.type[s]];
+        boolean isEmergency = (type == VehicleType.AMBULANCE || type == VehicleType.POLICE_CAR || type == VehicleType.FIRE_TRUCK);
+        int[] path = vehicles.path[s];
+
+        if (type == VehicleType.BUS) { // Reset bus to start of the loop
+            vehicles.pathIndex[s] = 0;
+            vehicles.current[s] = path[0];
+            vehicles.next[s] = path[1];
+            vehicles.progress[s] = 0;
+            beginLeg(s);
+        }
+        else if (isEmergency && !vehicles.returning[s]) { // Calculate return path for emergency vehicles
+            int currentLoc = path[path.length - 1];
+            int base = path[0];
+            int[] returnPath = route(currentLoc, base);
+            if (returnPath != null && returnPath.length > 1) {
+                vehicles.path[s] = returnPath;
+                vehicles.pathIndex[s] = 0;
+                vehicles.current[s] = returnPath[0];
+                vehicles.next[s] = returnPath[1];
+                vehicles.destination[s] = base;
+                vehicles.returning[s] = true;
+                beginLeg(s);
             } else {
-                vehicles.remove(v);
+                vehicles.free(s);
+                metrics.vehicleRemoved();
             }
         }
         else { // Remove normal cars
-            v.next = null;
-            vehicles.remove(v);
+            vehicles.free(s);
+            metrics.vehicleRemoved();
         }
     }
 
-    // Updates traffic lights based on the load (queue size) of incoming roads.
-    private void updateLights() {
-        for (Node n : graph.nodes.values()) {
-            if (n.type == NodeType.INTERSECTION) {
-                int nsLoad = 0;
-                int ewLoad = 0;
-
-                // Calculate load for North-South and East-West directions
-                for (Map.Entry<Integer, List<Edge>> entry : graph.adjList.entrySet()) {
-                    Node fromNode = graph.nodes.get(entry.getKey());
-                    List<Edge> edges = entry.getValue();
-
-                    for (Edge e : edges) {
-                        if (e.target == n) {
-                            boolean isVertical = Math.abs(fromNode.y - n.y) > Math.abs(fromNode.x - n.x);
-                            if (isVertical) {
-                                nsLoad += e.vehicleQueue.size();
-                            } else {
-                                ewLoad += e.vehicleQueue.size();
-                            }
-                        }
-                    }
-                }
-                n.trafficLight.update(nsLoad, ewLoad);
+    // Switches between stepping every vehicle each tick (default) and the event-driven engine, in which a tick only touches
+    // the vehicles that reach the end of their edge and the lights that switch. Both follow the same movement, queue and
+    // light rules; the event-driven engine computes each arrival tick from the edge length and VehicleType.speed up front
+    // instead of summing per-tick steps, so the two may disagree by a tick on rounding and their checksums differ.
+    // Call between ticks (or before the engine thread starts); vehicles and lights carry over in both directions.
+    public void setEventDriven(boolean enabled) {
+        if (enabled == (calendar != null)) return;
+        if (enabled) {
+            calendar = new EventCalendar();
+            lightSynced = new long[graph.nodeCount()];
+            lightDue = new long[graph.nodeCount()];
+            for (int s = 0; s < vehicles.highWater(); s++) {
+                vehicles.legTick[s] = tickCount; // progress[] is current, extrapolate from here
+            }
+            vehicles.setClock(tickCount);
+            restartCalendar();
+        } else {
+            for (int s = 0; s < vehicles.highWater(); s++) {
+                if (vehicles.isLive(s)) vehicles.progress[s] = vehicles.progressAt(s);
+            }
+            syncLights();
+            vehicles.setClock(-1);
+            calendar = null;
+            lightSynced = null;
+            lightDue = null;
+        }
+    }
+
+    public boolean isEventDriven() {
+        return calendar != null;
+    }
+
+    // Gives every light the timing of the plan and restarts its cycle at the plan's offset (see TimingPlan). Meant for the
+    // start of a run; applied between ticks, vehicles already waiting at a light that turns green are released.
+    // Journals and checkpoints do not store the plan, so replay or restore with the same plan applied.
+    public void applyTimingPlan(TimingPlan plan) {
+        onEngineThread(() -> {
+            if (calendar != null) syncLights();
+            plan.apply(world);
+            if (calendar == null) return;
+            for (int k = 0; k < graph.intersectionCount(); k++) {
+                int n = graph.intersection(k);
+                lightDue[n] = NO_EVENT; // Events of the old cycle no longer match and are skipped
+                scheduleLight(n);
+                wakeGreenApproaches(n);
+            }
+        });
+    }
+
+    // Rebuilds the calendar from the current state: one arrival per moving vehicle and one switch per light.
+    private void restartCalendar() {
+        calendar.clear();
+        lightClock = tickCount;
+        for (int k = 0; k < graph.intersectionCount(); k++) {
+            int n = graph.intersection(k);
+            lightSynced[n] = tickCount;
+            lightDue[n] = NO_EVENT;
+            scheduleLight(n);
+        }
+        pending = new long[vehicles.capacity()];
+        Arrays.fill(pending, NO_EVENT);
+        for (int s = 0; s < vehicles.highWater(); s++) {
+            if (vehicles.isLive(s) && vehicles.next[s] >= 0) scheduleArrival(s);
+        }
+    }
+
+    // One tick of the event-driven engine. Same two phases as tick(): the vehicles due this tick are checked against the
+    // state at the start of the tick, then the ones allowed through are committed in slot order. Vehicles that are stopped
+    // wait without events until a light switch or a departure from their road wakes them. Returns the number of vehicles updated.
+    private int eventTick() {
+        long now = ++tickCount;
+
+        // Phase 1: collect and check the vehicles reaching the end of their edge
+        int count = 0;
+        while (!calendar.isEmpty() && EventCalendar.tickOf(calendar.peek()) <= now
+                && EventCalendar.kindOf(calendar.peek()) == EventCalendar.VEHICLE) {
+            int s = EventCalendar.subjectOf(calendar.poll());
+            if (pending[s] != now) continue; // Superseded by a later schedule or the vehicle is gone
+            pending[s] = NO_EVENT;
+            if (count == due.length) due = Arrays.copyOf(due, count * 2);
+            due[count++] = s;
+        }
+        for (int i = 0; i < count; i++) {
+            int s = due[i];
+            if (!mayEnter(s)) {
+                pending[s] = WAITING;
+                due[i] = -1;
             }
         }
+
+        // Phase 2: deterministic commit of edge transitions
+        for (int i = 0; i < count; i++) {
+            if (due[i] >= 0) arrive(due[i]);
+        }
+
+        // Light switches due this tick, after all vehicles (like updateLights at the end of tick())
+        lightClock = now;
+        while (!calendar.isEmpty() && EventCalendar.tickOf(calendar.peek()) <= now) {
+            int n = EventCalendar.subjectOf(calendar.poll());
+            if (lightDue[n] != now) continue;
+            switchLight(n);
+        }
+
+        vehicles.setClock(now);
+        if (tickCount % routeRefreshTicks == 0) router.refreshWeights();
+        return count;
+    }
+
+    // Schedules the arrival of vehicle slot s at the end of its edge, counting from vehicles.legTick[s].
+    private void scheduleArrival(int s) {
+        if (pending.length < vehicles.capacity()) {
+            int old = pending.length;
+            pending = Arrays.copyOf(pending, vehicles.capacity());
+            Arrays.fill(pending, old, pending.length, NO_EVENT);
+        }
+        long ticks = (long) Math.ceil((1.0 - vehicles.progress[s]) / vehicles.step[s]);
+        long at = vehicles.legTick[s] + Math.max(1, ticks);
+        vehicles.dueTick[s] = at;
+        pending[s] = at;
+        calendar.schedule(at, EventCalendar.VEHICLE, s);
+    }
+
+    // Lets the head of the road's queue try again next tick if it is stopped at the end of the road.
+    private void wakeHead(int e) {
+        Vehicle head = world.queueHead(e);
+        if (head != null && pending[head.slot] == WAITING) {
+            pending[head.slot] = tickCount + 1;
+            calendar.schedule(tickCount + 1, EventCalendar.VEHICLE, head.slot);
+        }
+    }
+
+    // The queue count of one approach of the light at node index n changed, which may move its next switch.
+    private void lightLoadChanged(int n) {
+        TrafficLight light = world.light(n);
+        light.skip(lightClock - lightSynced[n]);
+        lightSynced[n] = lightClock;
+        scheduleLight(n);
+    }
+
+    private void scheduleLight(int n) {
+        long at = lightClock + world.light(n).updatesUntilSwitch();
+        if (at != lightDue[n]) {
+            lightDue[n] = at;
+            calendar.schedule(at, EventCalendar.LIGHT, n);
+        }
+    }
+
+    // Applies the pending updates of the light at node index n, the last of which switches it, and wakes the vehicles
+    // waiting on the approaches that just turned green.
+    private void switchLight(int n) {
+        TrafficLight light = world.light(n);
+        light.skip(lightClock - 1 - lightSynced[n]);
+        light.update();
+        lightSynced[n] = lightClock;
+        lightSwitched(n, lightClock);
+        wakeGreenApproaches(n);
+        scheduleLight(n);
+    }
+
+    // Wakes the heads of the occupied incoming roads of node index n that have green.
+    private void wakeGreenApproaches(int n) {
+        TrafficLight light = world.light(n);
+        for (int k = graph.firstIncoming(n); k < graph.endIncoming(n); k++) {
+            int e = graph.incomingEdge(k);
+            if (world.queueSize(e) > 0 && light.canPass(graph.edge(e))) wakeHead(e);
+        }
+    }
+
+    // Brings every light's timer up to date (lights only carry their timer forward when their load changes or they switch).
+    private void syncLights() {
+        for (int k = 0; k < graph.intersectionCount(); k++) {
+            int n = graph.intersection(k);
+            world.light(n).skip(lightClock - lightSynced[n]);
+            lightSynced[n] = lightClock;
+        }
+    }
+
+    // Updates traffic lights based on the load (queue size) of incoming roads. The per-approach loads are kept up to date by
+    // WorldState.enter/leave, so this is O(intersections) per tick.
+    private void updateLights() {
+        for (int k = 0; k < graph.intersectionCount(); k++) {
+            int n = graph.intersection(k);
+            TrafficLight light = world.lightAt(k);
+            boolean wasNorthSouth = light.northSouthGreen;
+            light.update();
+            if (light.northSouthGreen != wasNorthSouth) lightSwitched(n, tickCount + 1); // tickCount is incremented after the lights
+        }
     }
 
     // Initialises random traffic and starts the background traffic generator.
     public void initializeTraffic() {
         System.out.println("Fetching the city traffic data...");
-        Random R = new Random();
+        startTraffic(seed != null ? new Random(seed) : new Random());
+    }
+
+    // Makes initializeTraffic reproducible: the same seed and map give the same traffic, tick for tick (vehicles are
+    // ordered by logical entry stamps and all schedules run on simulated time, so wall-clock timing does not matter).
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    // Vehicle delay: time vehicles spent held at the end of an edge by a red light or the queue head, in vehicle-seconds,
+    // since the traffic was last reset or restored, including the current wait of vehicles that are still stopped.
+    // Vehicles drive at their type's constant speed otherwise, so this is their whole loss against free flow.
+    // Read it between ticks (from the engine thread, or while the engine thread is not running).
+    public double getDelaySeconds() {
+        long total = delayTicks;
+        for (int s = 0; s < vehicles.highWater(); s++) {
+            if (!vehicles.isLive(s) || vehicles.next[s] < 0) continue;
+            if (calendar != null) {
+                total += Math.max(0, tickCount + 1 - Math.max(vehicles.dueTick[s], delayStart + 1));
+            } else {
+                total += vehicles.waitTicks[s];
+            }
+        }
+        return total / (double) TICKS_PER_SECOND;
+    }
+
+    // Vehicles counted by getDelaySeconds: those present at the last reset or restore plus those spawned since.
+    public long getDelayVehicles() {
+        return delayVehicles;
+    }
+
+    // Mean delay per vehicle in seconds (0 without vehicles); the score of the signal timing optimizer.
+    public double getMeanDelaySeconds() {
+        return delayVehicles > 0 ? getDelaySeconds() / delayVehicles : 0;
+    }
+
+    // Starts appending the run's inputs (spawns, user dispatches, placements, resets) and light switches to the journal.
+    // Call before any traffic is created. The caller closes the writer, preferably with close(getTickCount()).
+    public void recordJournal(EventJournal.Writer writer) {
+        journal = writer;
+    }
+
+    // Makes the engine take its traffic from a recorded journal instead of generating it; do not call startTraffic.
+    // With reroute, recorded routes other than bus loops are recomputed by this engine's router (to compare routing
+    // performance); otherwise the recorded routes are used as they are.
+    public void replayJournal(EventJournal.Reader reader, boolean reroute) {
+        replay = new JournalReplay(this, reader, reroute);
+    }
+
+    // True when a replay has reached the last tick of the recorded run.
+    public boolean isReplayFinished() {
+        return replay != null && replay.isFinished(tickCount);
+    }
+
+    // Ticks at which the replaying engine's light switches did not match the recording (-1 / 0 while it follows it).
+    public long getReplayFirstDivergence() {
+        return replay != null ? replay.firstDivergence() : -1;
+    }
+
+    public long getReplayDivergences() {
+        return replay != null ? replay.divergences() : 0;
+    }
+
+    // Takes a checkpoint of the complete simulation state between two ticks and writes it to the file in the background.
+    // On the engine thread this only copies the state arrays (copy-on-snapshot), so the tick loop keeps running while the
+    // file is written. The future completes with the checkpoint once the file is complete.
+    public CompletableFuture<Checkpoint> checkpoint(Path file) {
+        return checkpoint().thenApplyAsync(checkpoint -> {
+            try {
+                checkpoint.write(file);
+                return checkpoint;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write checkpoint " + file, e);
+            }
+        }, CHECKPOINT_WRITER);
+    }
+
+    // Takes an in-memory checkpoint between two ticks, e.g. a warmed-up city to restore into several engines on the same
+    // map. A checkpoint is only read by restore, so one can be restored by many engines at once.
+    public CompletableFuture<Checkpoint> checkpoint() {
+        CompletableFuture<Checkpoint> captured = new CompletableFuture<>();
+        onEngineThread(() -> {
+            try {
+                captured.complete(captureCheckpoint());
+            } catch (RuntimeException e) {
+                captured.completeExceptionally(e);
+            }
+        });
+        return captured;
+    }
+
+    // Replaces the current traffic with the checkpoint's (read it with Checkpoint.read, off the engine thread): vehicles,
+    // queues, lights, counters, tick count, pending bus waves and the background generator. An OD demand stream is stopped
+    // (start it again if wanted). Restores are not recorded in the event journal.
+    public void restore(Checkpoint checkpoint) {
+        onEngineThread(() -> applyCheckpoint(checkpoint));
+    }
+
+    private Checkpoint captureCheckpoint() {
+        Checkpoint c = new Checkpoint();
+        c.nodeCount = graph.nodeCount();
+        c.edgeCount = graph.edgeCount();
+        c.tickCount = tickCount;
+        c.entrySequence = entrySequence.get();
+        c.carIdCounter = carIdCounter;
+        c.trafficLoopCount = trafficLoopCount;
+
+        int n = c.highWater = vehicles.highWater();
+        c.freeSlots = vehicles.freeSlotOrder();
+        c.ids = new String[n];
+        for (int s = 0; s < n; s++) {
+            if (vehicles.isLive(s)) c.ids[s] = vehicles.view(s).id;
+        }
+        c.type = Arrays.copyOf(vehicles.type, n);
+        c.current = Arrays.copyOf(vehicles.current, n);
+        c.next = Arrays.copyOf(vehicles.next, n);
+        c.destination = Arrays.copyOf(vehicles.destination, n);
+        c.pathIndex = Arrays.copyOf(vehicles.pathIndex, n);
+        c.edge = Arrays.copyOf(vehicles.edge, n);
+        c.progress = Arrays.copyOf(vehicles.progress, n);
+        c.step = Arrays.copyOf(vehicles.step, n);
+        c.entryTime = Arrays.copyOf(vehicles.entryTime, n);
+        c.returning = Arrays.copyOf(vehicles.returning, n);
+        c.path = Arrays.copyOf(vehicles.path, n);
+
+        int lights = graph.intersectionCount();
+        c.northSouthGreen = new boolean[lights];
+        c.timer = new int[lights];
+        for (int k = 0; k < lights; k++) {
+            TrafficLight light = world.lightAt(k);
+            c.northSouthGreen[k] = light.northSouthGreen;
+            c.timer[k] = light.timer;
+        }
+
+        if (calendar != null) {
+            c.eventDriven = true;
+            c.lightClock = lightClock;
+            c.legTick = Arrays.copyOf(vehicles.legTick, n);
+            c.dueTick = Arrays.copyOf(vehicles.dueTick, n);
+            c.pending = new long[n];
+            Arrays.fill(c.pending, NO_EVENT);
+            System.arraycopy(pending, 0, c.pending, 0, Math.min(n, pending.length));
+            c.lightSynced = new long[lights];
+            c.lightDue = new long[lights];
+            for (int k = 0; k < lights; k++) {
+                c.lightSynced[k] = lightSynced[graph.intersection(k)];
+                c.lightDue[k] = lightDue[graph.intersection(k)];
+            }
+        }
+        if (routeCache != null) {
+            double[][] costs = new double[1][];
+            c.cachedRoutes = routeCache.snapshot(costs);
+            c.cachedCosts = costs[0];
+        }
+        if (stationTrees != null) c.stationTrees = stationTrees.snapshot();
+
+        int waves = 0;
+        c.busWaveDelay = new long[busWaves.size()];
+        c.busWaveGroup = new int[busWaves.size()];
+        for (Map.Entry<SimulationScheduler.Task, Integer> wave : busWaves.entrySet()) {
+            if (!wave.getKey().isPending()) continue;
+            c.busWaveDelay[waves] = Math.max(0, wave.getKey().getDue() - tickCount);
+            c.busWaveGroup[waves++] = wave.getValue();
+        }
+        c.busWaveDelay = Arrays.copyOf(c.busWaveDelay, waves);
+        c.busWaveGroup = Arrays.copyOf(c.busWaveGroup, waves);
+        if (trafficGenerator != null && trafficGenerator.isPending()) {
+            c.generatorDelay = Math.max(0, trafficGenerator.getDue() - tickCount);
+            c.generatorRandom = Checkpoint.saveRandom(trafficRandom);
+        }
+        if (demandTask != null && demandTask.isPending()) {
+            c.demandTick = demand.getTick();
+            c.demandRandom = Checkpoint.saveRandom(demand.getRandom());
+        }
+        return c;
+    }
+
+    private void applyCheckpoint(Checkpoint c) {
+        cancelBusWaves();
+        if (trafficGenerator != null) trafficGenerator.cancel();
+        if (demandTask != null) demandTask.cancel();
+        trafficGenerator = demandTask = null;
+        demand = null; // The caller resumes the demand file from the checkpoint (DemandSampler.resume, startDemand)
+        scheduler.reset(c.tickCount);
+        clearTraffic();
+
+        tickCount = c.tickCount;
+        entrySequence.set(c.entrySequence);
+        carIdCounter = c.carIdCounter;
+        trafficLoopCount = c.trafficLoopCount;
+
+        vehicles.restoreSlots(c.highWater, c.ids, c.type, c.freeSlots);
+        List<Integer> queued = new ArrayList<>();
+        for (int s = 0; s < c.highWater; s++) {
+            if (c.ids[s] == null) continue;
+            vehicles.current[s] = c.current[s];
+            vehicles.next[s] = c.next[s];
+            vehicles.destination[s] = c.destination[s];
+            vehicles.pathIndex[s] = c.pathIndex[s];
+            vehicles.edge[s] = c.edge[s];
+            vehicles.progress[s] = c.progress[s];
+            vehicles.step[s] = c.step[s];
+            vehicles.entryTime[s] = c.entryTime[s];
+            vehicles.returning[s] = c.returning[s];
+            vehicles.path[s] = c.path[s];
+            vehicles.legTick[s] = c.eventDriven ? c.legTick[s] : tickCount;
+            vehicles.dueTick[s] = c.eventDriven ? c.dueTick[s] : 0;
+            vehicles.waitTicks[s] = 0;
+            if (c.edge[s] >= 0) queued.add(s);
+        }
+        // Re-queued in entry order, every road holds its vehicles in the order they had (see LaneQueue)
+        queued.sort(Comparator.comparingLong(s -> vehicles.entryTime[s]));
+        for (int s : queued) {
+            int e = vehicles.edge[s];
+            world.enter(graph.edge(e), vehicles.view(s));
+        }
+        if (stationTrees != null) {
+            // The trees the original run had grown, or fresh ones: trees grown before the restore may break ties differently
+            if (c.stationTrees != null) stationTrees.restore(c.stationTrees);
+            else stationTrees.reset();
+        }
+        queuedVehicles = queued.size();
+        delayVehicles = vehicles.size(); // Delay is measured from the restored state on
+        delayStart = tickCount;
+
+        for (int k = 0; k < c.timer.length; k++) {
+            TrafficLight light = world.lightAt(k);
+            light.northSouthGreen = c.northSouthGreen[k];
+            light.timer = c.timer[k];
+        }
+
+        for (int i = 0; i < c.busWaveDelay.length; i++) scheduleBusWave(c.busWaveDelay[i], c.busWaveGroup[i]);
+        if (c.generatorDelay >= 0) {
+            Random R = Checkpoint.loadRandom(c.generatorRandom);
+            trafficRandom = R;
+            trafficGenerator = scheduler.scheduleAtFixedRate(c.generatorDelay, TICKS_PER_SECOND, () -> generateTraffic(R));
+        }
+
+        if (routeCache != null) {
+            if (c.cachedRoutes != null) routeCache.restore(c.cachedRoutes, c.cachedCosts);
+            else routeCache.clear();
+        }
+        router.refreshWeights();
+
+        if (calendar != null && c.eventDriven) {
+            restoreCalendar(c);
+        } else if (calendar != null) {
+            vehicles.setClock(tickCount); // As setEventDriven(true): progress[] is current, extrapolate from here
+            restartCalendar();
+        } else if (c.eventDriven) {
+            // As setEventDriven(false): store the extrapolated progress and bring the light timers up to date
+            vehicles.setClock(tickCount);
+            for (int s = 0; s < c.highWater; s++) {
+                if (c.ids[s] != null) vehicles.progress[s] = vehicles.progressAt(s);
+            }
+            vehicles.setClock(-1);
+            for (int k = 0; k < c.timer.length; k++) {
+                world.lightAt(k).skip(c.lightClock - c.lightSynced[k]);
+            }
+        }
+        if (publishSnapshots) publishSnapshot();
+    }
+
+    // Rebuilds the future event list of an event-driven checkpoint: the pending vehicle events and light switches.
+    private void restoreCalendar(Checkpoint c) {
+        calendar.clear();
+        lightClock = c.lightClock;
+        pending = new long[vehicles.capacity()];
+        Arrays.fill(pending, NO_EVENT);
+        for (int s = 0; s < c.highWater; s++) {
+            if (c.ids[s] == null) continue;
+            pending[s] = c.pending[s];
+            if (pending[s] >= 0) calendar.schedule(pending[s], EventCalendar.VEHICLE, s);
+        }
+        for (int k = 0; k < c.timer.length; k++) {
+            int n = graph.intersection(k);
+            lightSynced[n] = c.lightSynced[k];
+            lightDue[n] = c.lightDue[k];
+            calendar.schedule(lightDue[n], EventCalendar.LIGHT, n);
+        }
+        vehicles.setClock(tickCount);
+    }
+
+    private interface JournalAction {
+        void write(EventJournal.Writer writer) throws IOException;
+    }
+
+    private void journal(JournalAction action) {
+        if (journal == null) return;
+        try {
+            action.write(journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the event journal", e);
+        }
+    }
+
+    private void lightSwitched(int n, long tick) {
+        metrics.lightSwitched(n);
+        journal(w -> w.lightSwitch(tick, n));
+        if (replay != null) {
+            try {
+                replay.lightSwitched(tick, n);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read the event journal", e);
+            }
+        }
+    }
+
+    private void replayInputs() {
+        try {
+            replay.applyInputs(tickCount + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the event journal", e);
+        }
+    }
+
+    private void replayChecks() {
+        try {
+            replay.endTick(tickCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the event journal", e);
+        }
+    }
+
+    // Journal inputs, applied by JournalReplay before the tick they were recorded for.
+    void replaySpawn(String id, VehicleType type, int[] route, int destination, int flags, boolean reroute) {
+        if (reroute) {
+            route = route(route[0], destination);
+            if (route == null) return;
+        }
+        addVehicle(id, type, route, destination, flags);
+    }
+
+    void replayPlace(int slot, int pathIndex, double progress) {
+        if (vehicles.isLive(slot)) placeVehicle(slot, pathIndex, progress);
+    }
+
+    void replayReset() {
+        journal(w -> w.reset(tickCount + 1));
+        clearTraffic();
+    }
+
+    // Seeds the initial traffic, starts the bus waves and generates background demand once per simulated second.
+    // Calling it again replaces the previous generator instead of adding a second one.
+    public void startTraffic(Random R) {
+        seedTraffic(R);
+        onEngineThread(() -> {
+            if (trafficGenerator != null) trafficGenerator.cancel();
+            trafficRandom = R;
+            trafficGenerator = scheduler.scheduleAtFixedRate(TICKS_PER_SECOND, TICKS_PER_SECOND, () -> generateTraffic(R));
+        });
+        spawnBusRoute("SYSTEM_AUTO");
+    }
+
+    // Drives spawning from origin-destination demand instead of the random background generator (which is stopped): from the
+    // next tick on, the trips the sampler draws for each tick join as one spawnVehicles batch. Bus waves are unaffected.
+    public void startDemand(DemandSampler demand) {
+        onEngineThread(() -> {
+            if (trafficGenerator != null) trafficGenerator.cancel();
+            if (demandTask != null) demandTask.cancel();
+            this.demand = demand;
+            demandTask = scheduler.scheduleAtFixedRate(0, 1, () -> {
+                List<TripRequest> trips;
+                try {
+                    trips = demand.sample();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot read the demand file", e);
+                }
+                if (!trips.isEmpty()) spawnVehicles(trips);
+                if (demand.isFinished()) demandTask.cancel();
+            });
+        });
+    }
+
+    // Spawns the initial random cars and one vehicle from each emergency station, then scatters them along their paths.
+    public void seedTraffic(Random R) {
+        int[] apartments = graph.nodesOfType(NodeType.APARTMENT);
+        if (apartments.length == 0) return;
 
         // Spawn initial random cars
         for(int i = 0; i < 20; i++) {
-            Node s = graph.nodes.get(R.nextInt(15) + 51);
-            Node e = graph.nodes.get(R.nextInt(15) + 51);
+            Node s = pickNode(apartments, R);
+            Node e = pickNode(apartments, R);
             if (s != e) spawnVehicle(s, e, VehicleType.CAR);
         }
 
         // Spawn initial emergency vehicles
-        Node startNode_P = graph.nodes.get(81);
-        Node endNode_P = graph.nodes.get(R.nextInt(15) + 51);
-        if (startNode_P != endNode_P) spawnVehicle(startNode_P, endNode_P, VehicleType.POLICE_CAR);
+        spawnEmergency(NodeType.POLICE, VehicleType.POLICE_CAR, apartments, R);
+        spawnEmergency(NodeType.HOSPITAL, VehicleType.AMBULANCE, apartments, R);
+        spawnEmergency(NodeType.FIRE_STATION, VehicleType.FIRE_TRUCK, apartments, R);
 
-        Node startNode_A = graph.nodes.get(82);
-        Node endNode_A = graph.nodes.get(R.nextInt(15) + 51);
-        if (startNode_A != endNode_A) spawnVehicle(startNode_A, endNode_A, VehicleType.AMBULANCE);
+        scatterVehiclesOnPath(R);
+    }
 
-        Node startNode_F = graph.nodes.get(83);
-        Node endNode_F = graph.nodes.get(R.nextInt(15) + 51);
-        if (startNode_F != endNode_F) spawnVehicle(startNode_F, endNode_F, VehicleType.FIRE_TRUCK);
+    // One second worth of background demand: a random car trip, plus an emergency burst every 10th call.
+    public void generateTraffic(Random R) {
+        trafficLoopCount++;
+        int[] apartments = graph.nodesOfType(NodeType.APARTMENT);
+        if (apartments.length == 0) return;
 
-        scatterVehiclesOnPath();
-        spawnBusRoute("SYSTEM_AUTO");
+        Node s = pickNode(apartments, R);
+        Node e = pickNode(apartments, R);
+        if (s != e) spawnVehicle(s, e, VehicleType.CAR);
 
-        // Background thread to continuously generate new traffic
-        new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(1000);
-                    trafficLoopCount++;
-
-                    if (!graph.nodes.isEmpty()) {
-                        Node s = graph.nodes.get(R.nextInt(15) + 51);
-                        Node e = graph.nodes.get(R.nextInt(15) + 51);
-                        if (s != e) spawnVehicle(s, e, VehicleType.CAR);
-                    }
-                    // Periodically spawn emergency vehicles
-                    if((trafficLoopCount % 10) == 0){
-                        spawnVehicle(graph.nodes.get(81), graph.nodes.get(R.nextInt(15) + 51), VehicleType.POLICE_CAR);
-                        spawnVehicle(graph.nodes.get(82), graph.nodes.get(R.nextInt(15) + 51), VehicleType.AMBULANCE);
-                        spawnVehicle(graph.nodes.get(83), graph.nodes.get(R.nextInt(15) + 51), VehicleType.FIRE_TRUCK);
-                    }
-
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    break;
-                }
-            }
-        }).start();
+        // Periodically spawn emergency vehicles
+        if((trafficLoopCount % 10) == 0){
+            spawnEmergency(NodeType.POLICE, VehicleType.POLICE_CAR, apartments, R);
+            spawnEmergency(NodeType.HOSPITAL, VehicleType.AMBULANCE, apartments, R);
+            spawnEmergency(NodeType.FIRE_STATION, VehicleType.FIRE_TRUCK, apartments, R);
+        }
+    }
+
+    // Sends a vehicle from a station of the given type to a random apartment.
+    private void spawnEmergency(NodeType station, VehicleType type, int[] apartments, Random R) {
+        Node start = pickNode(graph.nodesOfType(station), R);
+        Node end = pickNode(apartments, R);
+        if (start != null && start != end) spawnVehicle(start, end, type);
+    }
+
+    // Picks a random node among the candidate indices. Does not draw from R when there is only one candidate, so maps with
+    // a single station per service consume the same random sequence as the built-in city.
+    private Node pickNode(int[] candidates, Random R) {
+        if (candidates.length == 0) return null;
+        if (candidates.length == 1) return graph.node(candidates[0]);
+        return graph.node(candidates[R.nextInt(candidates.length)]);
     }
 
     // Randomises the initial position of vehicles on their path to avoid clumping at start nodes.
-    private void scatterVehiclesOnPath() {
-        for (Vehicle v : vehicles) {
-            if (v.type == VehicleType.BUS) continue;
-
-            if (v.path != null && v.path.size() > 2) {
-                int randomPathIndex = (int) (Math.random() * (v.path.size() - 1));
-                v.currentPathIndex = randomPathIndex;
-                v.current = v.path.get(randomPathIndex);
-                v.next = v.path.get(randomPathIndex + 1);
-                v.progress = Math.random();
+    private void scatterVehiclesOnPath(Random R) {
+        for (int s = 0; s < vehicles.highWater(); s++) {
+            if (!vehicles.isLive(s) || vehicles.type[s] == VehicleType.BUS.ordinal()) continue;
+
+            int[] path = vehicles.path[s];
+            if (path.length > 2) {
+                int randomPathIndex = (int) (R.nextDouble() * (path.length - 1));
+                placeVehicle(s, randomPathIndex, R.nextDouble());
             }
         }
     }
-}
\ No newline at end of file
+
+    // Moves vehicle slot s to the given leg of its path and position along it.
+    private void placeVehicle(int s, int pathIndex, double progress) {
+        journal(w -> w.place(tickCount + 1, s, pathIndex, progress));
+        int[] path = vehicles.path[s];
+        leaveEdge(s);
+        vehicles.pathIndex[s] = pathIndex;
+        vehicles.current[s] = path[pathIndex];
+        vehicles.next[s] = path[pathIndex + 1];
+        vehicles.progress[s] = progress;
+        beginLeg(s); // Queue the vehicle on the road it was moved to
+    }
+}
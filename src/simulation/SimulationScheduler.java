@@ -0,0 +1,87 @@
+package simulation;
+
+import java.util.PriorityQueue;
+
+// Runs delayed and recurring tasks on simulated time instead of wall-clock time. The engine advances it once per tick, on
+// the engine thread, so scheduled work (bus waves, background demand) runs at the same simulated moment whether the engine
+// steps at 20 ticks per second behind the GUI or as fast as possible headless, and no sleeping threads are involved.
+// Scheduling and running are confined to the engine thread; Task.cancel may be called from any thread.
+public class SimulationScheduler {
+
+    // Handle of a scheduled task. A cancelled task never runs again.
+    public static final class Task {
+        private final Runnable action;
+        private final long period; // Ticks between runs, 0 for one-shot tasks
+        private final long sequence; // Tasks due in the same tick run in the order they were scheduled
+        private long due;
+        private boolean done; // One-shot task that has run
+        private volatile boolean cancelled;
+
+        private Task(Runnable action, long due, long period, long sequence) {
+            this.action = action;
+            this.due = due;
+            this.period = period;
+            this.sequence = sequence;
+        }
+
+        public void cancel() { cancelled = true; }
+        public boolean isCancelled() { return cancelled; }
+        public boolean isPending() { return !cancelled && !done; }
+        public long getDue() { return due; } // Completed-tick count at which the task runs next
+    }
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>((a, b) ->
+            a.due != b.due ? Long.compare(a.due, b.due) : Long.compare(a.sequence, b.sequence));
+    private long now = 0;      // Completed ticks as of the last runDue call
+    private long sequence = 0;
+
+    // Runs the action once after the given number of ticks have completed (0 = before the next tick).
+    public Task schedule(long delayTicks, Runnable action) {
+        return add(new Task(action, now + Math.max(0, delayTicks), 0, sequence++));
+    }
+
+    // Runs the action after initialDelayTicks and then every periodTicks, until cancelled.
+    public Task scheduleAtFixedRate(long initialDelayTicks, long periodTicks, Runnable action) {
+        if (periodTicks <= 0) throw new IllegalArgumentException("period must be positive: " + periodTicks);
+        return add(new Task(action, now + Math.max(0, initialDelayTicks), periodTicks, sequence++));
+    }
+
+    private Task add(Task task) {
+        queue.add(task);
+        return task;
+    }
+
+    // Called by the engine before each tick with the number of ticks completed so far; runs every task that is due.
+    // Tasks scheduled by a running task with delay 0 run in the same call.
+    public void runDue(long completedTicks) {
+        now = completedTicks;
+        while (!queue.isEmpty() && queue.peek().due <= completedTicks) {
+            Task task = queue.poll();
+            if (task.cancelled) continue;
+            task.action.run();
+            if (task.period == 0) task.done = true;
+            if (task.period > 0 && !task.cancelled) {
+                task.due += task.period;
+                queue.add(task);
+            }
+        }
+    }
+
+    // Cancels every task and moves the clock to the given completed-tick count (checkpoint restore), so that delays of
+    // tasks scheduled before the next runDue count from there.
+    public void reset(long completedTicks) {
+        cancelAll();
+        now = completedTicks;
+    }
+
+    // Cancels and drops every pending task.
+    public void cancelAll() {
+        for (Task task : queue) task.cancel();
+        queue.clear();
+    }
+
+    // Number of pending tasks (including cancelled ones not yet dropped).
+    public int size() {
+        return queue.size();
+    }
+}
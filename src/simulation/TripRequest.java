@@ -0,0 +1,17 @@
+package simulation;
+
+import models.Node;
+import models.VehicleType;
+
+// One trip for SimulationEngine.spawnVehicles: a vehicle of the given type driving from origin to destination.
+public final class TripRequest {
+    public final Node origin;
+    public final Node destination;
+    public final VehicleType type;
+
+    public TripRequest(Node origin, Node destination, VehicleType type) {
+        this.origin = origin;
+        this.destination = destination;
+        this.type = type;
+    }
+}
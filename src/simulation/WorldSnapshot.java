@@ -0,0 +1,39 @@
+package simulation;
+
+import models.VehicleType;
+
+// Immutable picture of the dynamic world (vehicle positions and light phases) at the end of one tick. The engine builds a
+// new one after each tick and publishes it with a single volatile write, so readers on other threads (the renderer) see a
+// consistent state without locks and never observe a vehicle halfway through an edge transition. The arrays are filled
+// before publication and never modified afterwards; readers must not write to them either.
+public final class WorldSnapshot {
+    public static final WorldSnapshot EMPTY = new WorldSnapshot(0, 0, 0);
+
+    public final long tick;              // Number of ticks the engine had completed when the snapshot was taken
+    public final int vehicleCount;
+
+    // Per vehicle (0 .. vehicleCount-1, in slot order)
+    public final String[] ids;
+    public final VehicleType[] types;
+    public final int[] current;          // Node index the vehicle last passed
+    public final int[] next;             // Node index it is driving towards, -1 when it has stopped
+    public final double[] progress;      // 0.0 (at current) to 1.0 (at next)
+    public final boolean[] returning;    // Emergency vehicle on its way back to the station
+    public final int[][] paths;          // Route node indices (shared with the engine, which never modifies a route)
+
+    // Per intersection k (see CityGraph.intersection): true while the north/south approaches have green
+    public final boolean[] northSouthGreen;
+
+    WorldSnapshot(long tick, int vehicleCount, int intersectionCount) {
+        this.tick = tick;
+        this.vehicleCount = vehicleCount;
+        this.ids = new String[vehicleCount];
+        this.types = new VehicleType[vehicleCount];
+        this.current = new int[vehicleCount];
+        this.next = new int[vehicleCount];
+        this.progress = new double[vehicleCount];
+        this.returning = new boolean[vehicleCount];
+        this.paths = new int[vehicleCount][];
+        this.northSouthGreen = new boolean[intersectionCount];
+    }
+}